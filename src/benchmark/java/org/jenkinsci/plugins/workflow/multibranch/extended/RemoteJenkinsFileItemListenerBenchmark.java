@@ -0,0 +1,36 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended;
+
+import hudson.EnvVars;
+import hudson.model.TaskListener;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.jenkinsci.plugins.workflow.multibranch.extended.scm.RemoteJenkinsFileBenchmarkState;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Cost of {@link RemoteJenkinsFileItemListener#buildEnvironmentFor}, which runs whenever the environment of a
+ * branch build is computed.
+ */
+@JmhBenchmark
+public class RemoteJenkinsFileItemListenerBenchmark {
+
+    private static final RemoteJenkinsFileItemListener LISTENER = new RemoteJenkinsFileItemListener();
+
+    public static class RunState extends RemoteJenkinsFileBenchmarkState {
+
+        private WorkflowRun run;
+
+        @Override
+        public void setup() throws Exception {
+            super.setup();
+            this.run = this.getJob("feature").getLastBuild();
+        }
+    }
+
+    @Benchmark
+    public EnvVars buildEnvironmentFor(RunState state) throws Exception {
+        EnvVars envVars = new EnvVars();
+        LISTENER.buildEnvironmentFor(state.run, envVars, TaskListener.NULL);
+        return envVars;
+    }
+}
@@ -0,0 +1,79 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
+
+import hudson.model.TaskListener;
+import hudson.scm.SCM;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.jenkinsci.plugins.workflow.flow.FlowExecution;
+import org.jenkinsci.plugins.workflow.flow.FlowExecutionOwner;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.util.Collections;
+
+/**
+ * Cost of the build start steps of {@link ExtendedSCMBinder}, without the queue, the executor and the run of the
+ * pipeline: the choice between matching and fallback branch, the resolution of the Jenkins file into a not yet started
+ * flow execution, and the generation of the branch specific SCM.
+ */
+@JmhBenchmark
+public class ExtendedSCMBinderBenchmark {
+
+    public static class BinderState extends RemoteJenkinsFileBenchmarkState {
+
+        /**
+         * Branch job to resolve for, feature uses the fallback branch of the remote repository
+         */
+        @Param({"master", "feature"})
+        public String branch;
+
+        /**
+         * True to start every invocation with empty caches, like the first build after a restart
+         */
+        @Param({"false", "true"})
+        public boolean cold;
+
+        private ExtendedSCMBinder binder;
+        private FlowExecutionOwner owner;
+        private SCM scm;
+
+        @Override
+        public void setup() throws Exception {
+            super.setup();
+            WorkflowJob job = this.getJob(this.branch);
+            this.binder = (ExtendedSCMBinder) job.getDefinition();
+            // Flow executions are created for the first build, which is completed and is not started again
+            this.owner = job.getBuildByNumber(1).asFlowExecutionOwner();
+            this.scm = this.binder.generateSCMWithNewBranch("master");
+        }
+
+        @Setup(Level.Invocation)
+        public void prepareInvocation() {
+            if (this.cold) {
+                this.clearCaches();
+            }
+        }
+    }
+
+    @Benchmark
+    public String resolveMatchedBranch(BinderState state) throws Exception {
+        String branch = state.binder.resolveMatchedBranch(state.owner, RemoteJenkinsFileBenchmarkState.JENKINS_FILE, state.branch, TaskListener.NULL);
+        if (!"master".equals(branch)) {
+            throw new IllegalStateException("Unexpected branch " + branch + " for " + state.branch);
+        }
+        return branch;
+    }
+
+    @Benchmark
+    public FlowExecution createFromRemote(BinderState state) throws Exception {
+        return state.binder.createFromRemote(state.scm, RemoteJenkinsFileBenchmarkState.JENKINS_FILE, state.owner, TaskListener.NULL,
+                Collections.emptyList(), new RemoteJenkinsFileTimingAction());
+    }
+
+    @Benchmark
+    public Object generateSCMWithNewBranch(BinderState state) {
+        return state.binder.generateSCMWithNewBranch("feature");
+    }
+}
@@ -0,0 +1,72 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.PersonIdent;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+/**
+ * Local git repositories served through {@code file://} URLs for the benchmarks.
+ */
+public final class GitFixture {
+
+    private static final PersonIdent AUTHOR = new PersonIdent("benchmark", "benchmark@example.com");
+
+    private final File directory;
+
+    private GitFixture(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Creates a repository with the given files on master and one commit per additional branch
+     * @param directory Directory of the repository
+     * @param files     Files of the master branch, path to content
+     * @param branches  Additional branches, each one adds a comment line to all files of master
+     * @return {@link GitFixture}
+     * @throws Exception
+     */
+    public static GitFixture create(File directory, Map<String, String> files, String... branches) throws Exception {
+        try (Git git = Git.init().setDirectory(directory).setInitialBranch("master").call()) {
+            write(directory, files, "");
+            git.add().addFilepattern(".").call();
+            git.commit().setAuthor(AUTHOR).setCommitter(AUTHOR).setSign(false).setMessage("master").call();
+            for (String branch : branches) {
+                git.checkout().setCreateBranch(true).setName(branch).call();
+                write(directory, files, branch);
+                git.commit().setAll(true).setAuthor(AUTHOR).setCommitter(AUTHOR).setSign(false).setMessage(branch).call();
+                git.checkout().setName("master").call();
+            }
+        }
+        return new GitFixture(directory);
+    }
+
+    private static void write(File directory, Map<String, String> files, String suffix) throws Exception {
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            File target = new File(directory, file.getKey());
+            Files.createDirectories(target.getParentFile().toPath());
+            // Branches differ by a trailing comment, so that every branch has its own blobs
+            String content = suffix.isEmpty() ? file.getValue() : file.getValue() + "\n// " + suffix;
+            Files.write(target.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Working tree of the master branch
+     * @return directory
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * URL of the repository
+     * @return file URL
+     */
+    public String getUrl() {
+        return "file://" + this.directory.getAbsolutePath();
+    }
+}
@@ -0,0 +1,142 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.TaskListener;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import jenkins.branch.BranchSource;
+import jenkins.plugins.git.GitSCMSource;
+import jenkins.scm.api.SCMFile;
+import jenkins.scm.api.SCMFileSystem;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMProbe;
+import jenkins.scm.api.SCMProbeStat;
+import org.jenkinsci.plugins.workflow.multibranch.WorkflowMultiBranchProject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cost of {@link LocalMarkerSCMSourceCriteria#matches} per probed branch. Probes read the branch through the
+ * {@link SCMFileSystem} of a {@link GitSCMSource} for a {@code file://} fixture, like probes of branch indexing do.
+ */
+@JmhBenchmark
+public class LocalMarkerSCMSourceCriteriaBenchmark {
+
+    public static class ProbeState extends JmhBenchmarkState {
+
+        /**
+         * Empty marker, existing file, existing directory, missing file and pattern
+         */
+        @Param({"", "marker.txt", "deploy", "missing.txt", "**/values.yaml"})
+        public String localMarker;
+
+        /**
+         * True to start every invocation with empty caches, like the first indexing after a restart
+         */
+        @Param({"false", "true"})
+        public boolean cold;
+
+        private GitSCMSource source;
+        private SCMFileSystem fileSystem;
+        private SCMProbe probe;
+
+        @Override
+        public void setup() throws Exception {
+            Map<String, String> files = new HashMap<>();
+            files.put("marker.txt", "marker");
+            files.put("deploy/values.yaml", "values");
+            GitFixture repository = GitFixture.create(Files.createTempDirectory("remote-file-benchmark").toFile(), files, "feature");
+            this.source = new GitSCMSource(null, repository.getUrl(), "", "*", "", false);
+            WorkflowMultiBranchProject project = getJenkins().createProject(WorkflowMultiBranchProject.class, "benchmark");
+            project.getSourcesList().add(new BranchSource(this.source));
+            this.fileSystem = SCMFileSystem.of(this.source, new SCMHead("feature"));
+            if (this.fileSystem == null) {
+                throw new IllegalStateException("No file system for " + repository.getUrl());
+            }
+            this.probe = new FileSystemProbe("feature", this.fileSystem);
+        }
+
+        @Override
+        public void tearDown() {
+            try {
+                this.fileSystem.close();
+            } catch (IOException ignored) {
+                // Directory of the fixture is left to the temporary directory cleanup
+            }
+        }
+
+        @Setup(Level.Invocation)
+        public void prepareInvocation() {
+            if (this.cold) {
+                LocalMarkerProbeCache.get().clear();
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean matches(ProbeState state) throws Exception {
+        return LocalMarkerSCMSourceCriteria.matches(state.localMarker, state.probe, TaskListener.NULL);
+    }
+
+    @Benchmark
+    public boolean matchesWithProbeCache(ProbeState state) throws Exception {
+        return LocalMarkerSCMSourceCriteria.matches(state.localMarker, state.source, state.probe, TaskListener.NULL);
+    }
+
+    /**
+     * Probe on the file system of a branch, the commit time of the head is read once
+     */
+    private static final class FileSystemProbe extends SCMProbe {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private final long lastModified;
+        private final transient SCMFileSystem fileSystem;
+
+        private FileSystemProbe(String name, SCMFileSystem fileSystem) throws IOException, InterruptedException {
+            this.name = name;
+            this.lastModified = fileSystem.lastModified();
+            this.fileSystem = fileSystem;
+        }
+
+        @NonNull
+        @Override
+        public String name() {
+            return this.name;
+        }
+
+        @Override
+        public long lastModified() {
+            return this.lastModified;
+        }
+
+        @NonNull
+        @Override
+        public SCMProbeStat stat(@NonNull String path) throws IOException {
+            try {
+                return SCMProbeStat.fromType(this.fileSystem.getRoot().child(path).getType());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading " + path, e);
+            }
+        }
+
+        @Override
+        public SCMFile getRoot() {
+            return this.fileSystem.getRoot();
+        }
+
+        @Override
+        public void close() {
+            // File system is closed with the benchmark state
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
+
+import hudson.model.Computer;
+import hudson.plugins.git.BranchSpec;
+import hudson.plugins.git.GitSCM;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import jenkins.branch.BranchSource;
+import jenkins.model.Jenkins;
+import jenkins.plugins.git.GitSCMSource;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.multibranch.WorkflowMultiBranchProject;
+import org.jenkinsci.plugins.workflow.multibranch.extended.RemoteJenkinsFileWorkflowBranchProjectFactory;
+import org.openjdk.jmh.annotations.Param;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jenkins with a multibranch project whose branch jobs read their Jenkins file from a {@code file://} remote
+ * repository. The source repository has a master and a feature branch, the remote repository only has master, so
+ * feature builds use the fallback branch when Match Branches option is enabled.
+ */
+public class RemoteJenkinsFileBenchmarkState extends JmhBenchmarkState {
+
+    public static final String JENKINS_FILE = "Jenkinsfile";
+    public static final String LOCAL_MARKER = "marker.txt";
+
+    @Param({"false", "true"})
+    public boolean matchBranches;
+
+    @Param({"false", "true"})
+    public boolean lightweight;
+
+    private GitFixture remoteJenkinsFileRepo;
+    private WorkflowMultiBranchProject project;
+
+    @Override
+    public void setup() throws Exception {
+        File root = Files.createTempDirectory("remote-file-benchmark").toFile();
+        this.remoteJenkinsFileRepo = GitFixture.create(new File(root, "jenkinsfile"), Collections.singletonMap(JENKINS_FILE, "echo 'benchmark'"));
+        GitFixture sourceCodeRepo = GitFixture.create(new File(root, "source"), Collections.singletonMap(LOCAL_MARKER, "marker"), "feature");
+        GitSCM remoteJenkinsFileSCM = new GitSCM(GitSCM.createRepoList(this.remoteJenkinsFileRepo.getUrl(), null),
+                Collections.singletonList(new BranchSpec("master")), null, null, null);
+        RemoteJenkinsFileWorkflowBranchProjectFactory factory = new RemoteJenkinsFileWorkflowBranchProjectFactory(JENKINS_FILE, LOCAL_MARKER,
+                remoteJenkinsFileSCM, this.matchBranches, "master", false);
+        factory.setLightweight(this.lightweight);
+        this.project = getJenkins().createProject(WorkflowMultiBranchProject.class, "benchmark");
+        this.project.getSourcesList().add(new BranchSource(new GitSCMSource(null, sourceCodeRepo.getUrl(), "", "*", "", false)));
+        this.project.setProjectFactory(factory);
+        this.project.scheduleBuild2(0).getFuture().get();
+        waitUntilIdle();
+    }
+
+    /**
+     * Forgets the cached heads, missing branches and Jenkins files of the remote repository. Checkouts and mirrors on
+     * disk are kept.
+     */
+    public void clearCaches() {
+        JenkinsfileCache.get().clear();
+        RemoteRefTable.get().clear();
+        MissingBranchCache.get().invalidate(this.remoteJenkinsFileRepo.getUrl());
+    }
+
+    /**
+     * Waits for indexing and all scheduled builds to finish
+     * @throws InterruptedException
+     */
+    public static void waitUntilIdle() throws InterruptedException {
+        Jenkins jenkins = getJenkins();
+        while (!jenkins.getQueue().isEmpty() || isBuilding(jenkins)) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+    }
+
+    private static boolean isBuilding(Jenkins jenkins) {
+        for (Computer computer : jenkins.getComputers()) {
+            if (!computer.isIdle()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public WorkflowMultiBranchProject getProject() {
+        return project;
+    }
+
+    public WorkflowJob getJob(String branch) {
+        return this.project.getItem(branch);
+    }
+}
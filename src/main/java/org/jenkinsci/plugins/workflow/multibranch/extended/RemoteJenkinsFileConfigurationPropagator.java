@@ -0,0 +1,165 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.BulkChange;
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.listeners.ItemListener;
+import hudson.security.ACL;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.branch.BranchProjectFactory;
+import jenkins.security.ImpersonatingExecutorService;
+import jenkins.util.SystemProperties;
+import org.jenkinsci.plugins.workflow.flow.FlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.multibranch.WorkflowMultiBranchProject;
+import org.jenkinsci.plugins.workflow.multibranch.extended.scm.ExtendedSCMBinder;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Propagates configuration changes of {@link RemoteJenkinsFileWorkflowBranchProjectFactory} to the branch jobs of the
+ * project as soon as the project is saved, instead of waiting for branch indexing. Only branch jobs whose definition
+ * differs from the new configuration are updated and saved.
+ * Propagations run on a bounded executor, one at a time per project. A project which is saved again while its
+ * propagation is running gets one more propagation after it, which reads the latest configuration when it starts.
+ * Further saves until then share that propagation. If the queue is full, branch jobs are updated by the next branch
+ * indexing.
+ */
+@Extension
+public class RemoteJenkinsFileConfigurationPropagator extends ItemListener {
+
+    private static final Logger LOGGER = Logger.getLogger(RemoteJenkinsFileConfigurationPropagator.class.getName());
+    private static final int THREADS = SystemProperties.getInteger(RemoteJenkinsFileConfigurationPropagator.class.getName() + ".threads", 4);
+    private static final int QUEUE_SIZE = SystemProperties.getInteger(RemoteJenkinsFileConfigurationPropagator.class.getName() + ".queueSize", 1000);
+
+    private static final ExecutorService EXECUTOR_SERVICE = new ImpersonatingExecutorService(
+            new ThreadPoolExecutor(THREADS, THREADS, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(QUEUE_SIZE),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "RemoteJenkinsFileConfigurationPropagator")),
+            ACL.SYSTEM2);
+    // Full name of the project to its running or waiting propagation, guarded by itself
+    private static final Map<String, Propagation> PROPAGATIONS = new HashMap<>();
+
+    @Override
+    public void onUpdated(Item item) {
+        if (item instanceof WorkflowMultiBranchProject) {
+            propagate((WorkflowMultiBranchProject) item);
+        }
+    }
+
+    /**
+     * Updates the definition of every branch job which does not match the configuration of the project factory
+     * @param project {@link WorkflowMultiBranchProject}
+     * @return Future of the number of updated branch jobs, shared with a waiting propagation of the same project
+     */
+    @NonNull
+    public static CompletableFuture<Integer> propagate(@NonNull WorkflowMultiBranchProject project) {
+        if (!(project.getProjectFactory() instanceof RemoteJenkinsFileWorkflowBranchProjectFactory)) {
+            return CompletableFuture.completedFuture(0);
+        }
+        String fullName = project.getFullName();
+        CompletableFuture<Integer> waiting;
+        synchronized (PROPAGATIONS) {
+            Propagation propagation = PROPAGATIONS.computeIfAbsent(fullName, name -> new Propagation());
+            propagation.project = project;
+            if (propagation.waiting != null) {
+                // Waiting propagation reads the configuration when it starts, it covers this change too
+                return propagation.waiting;
+            }
+            propagation.waiting = waiting = new CompletableFuture<>();
+            if (propagation.running) {
+                // Started once the running propagation is done, which may have read the configuration before this change
+                return waiting;
+            }
+            propagation.running = true;
+        }
+        submit(fullName);
+        return waiting;
+    }
+
+    private static void submit(String fullName) {
+        try {
+            EXECUTOR_SERVICE.execute(() -> run(fullName));
+        } catch (RejectedExecutionException ex) {
+            CompletableFuture<Integer> waiting;
+            synchronized (PROPAGATIONS) {
+                waiting = PROPAGATIONS.remove(fullName).waiting;
+            }
+            waiting.complete(0);
+            LOGGER.log(Level.FINE, "Skipping propagation of {0}, queue is full", fullName);
+        }
+    }
+
+    private static void run(String fullName) {
+        WorkflowMultiBranchProject project;
+        CompletableFuture<Integer> started;
+        synchronized (PROPAGATIONS) {
+            Propagation propagation = PROPAGATIONS.get(fullName);
+            project = propagation.project;
+            started = propagation.waiting;
+            propagation.waiting = null;
+        }
+        try {
+            started.complete(update(project));
+        } catch (RuntimeException ex) {
+            started.completeExceptionally(ex);
+        }
+        synchronized (PROPAGATIONS) {
+            if (PROPAGATIONS.get(fullName).waiting == null) {
+                PROPAGATIONS.remove(fullName);
+                return;
+            }
+        }
+        // Project was saved again while this propagation was running
+        submit(fullName);
+    }
+
+    private static boolean isAffected(WorkflowJob job, ExtendedSCMBinder configuration) {
+        FlowDefinition definition = job.getDefinition();
+        return !(definition instanceof ExtendedSCMBinder) || !((ExtendedSCMBinder) definition).hasSameConfiguration(configuration);
+    }
+
+    private static int update(WorkflowMultiBranchProject project) {
+        BranchProjectFactory<WorkflowJob, ?> projectFactory = project.getProjectFactory();
+        if (!(projectFactory instanceof RemoteJenkinsFileWorkflowBranchProjectFactory)) {
+            return 0;
+        }
+        RemoteJenkinsFileWorkflowBranchProjectFactory factory = (RemoteJenkinsFileWorkflowBranchProjectFactory) projectFactory;
+        // Diff in memory first, unchanged branch jobs are not touched at all
+        ExtendedSCMBinder configuration = (ExtendedSCMBinder) factory.createDefinition();
+        int updated = 0;
+        for (WorkflowJob job : project.getItems()) {
+            if (!isAffected(job, configuration)) {
+                continue;
+            }
+            // Each job gets its own definition, as branch indexing does, and is written with a single save
+            try (BulkChange bulkChange = new BulkChange(job)) {
+                job.setDefinition(factory.createDefinition());
+                bulkChange.commit();
+                updated++;
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Unable to save " + job.getFullName(), ex);
+            }
+        }
+        LOGGER.log(Level.FINE, "Propagated configuration of {0} to {1} branch jobs", new Object[]{project.getFullName(), updated});
+        return updated;
+    }
+
+    private static final class Propagation {
+        private WorkflowMultiBranchProject project;
+        // Propagation which has not started yet, null if there is none
+        private CompletableFuture<Integer> waiting;
+        private boolean running;
+    }
+}
@@ -1,5 +1,6 @@
 package org.jenkinsci.plugins.workflow.multibranch.extended;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.EnvVars;
 import hudson.Extension;
@@ -7,14 +8,18 @@ import hudson.model.EnvironmentContributor;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.plugins.git.GitSCM;
+import hudson.scm.SCM;
 import org.eclipse.jgit.transport.RemoteConfig;
 import org.eclipse.jgit.transport.URIish;
 import org.jenkinsci.plugins.workflow.flow.FlowDefinition;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.jenkinsci.plugins.workflow.multibranch.extended.scm.ExtendedSCMBinder;
+import org.jenkinsci.plugins.workflow.multibranch.extended.scm.RemoteJenkinsFileAction;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.StringJoiner;
 
 @Extension
@@ -29,29 +34,74 @@ public class RemoteJenkinsFileItemListener extends EnvironmentContributor {
     public void buildEnvironmentFor(@NonNull Run r, @NonNull EnvVars envs, @NonNull TaskListener listener) throws IOException, InterruptedException {
         if (r instanceof WorkflowRun) {
             WorkflowRun workflowRun = (WorkflowRun) r;
-            WorkflowJob workflowJob = workflowRun.getParent();
-            FlowDefinition flowDefinition = workflowJob.getDefinition();
-            if (flowDefinition instanceof ExtendedSCMBinder) {
-                ExtendedSCMBinder extendedSCMBinder = (ExtendedSCMBinder) flowDefinition;
-                if (extendedSCMBinder.getRemoteJenkinsFileSCM() instanceof GitSCM) {
-                    GitSCM gitSCM = (GitSCM) extendedSCMBinder.getRemoteJenkinsFileSCM();
-                    StringJoiner scmUrls = new StringJoiner(",");
-                    for (RemoteConfig remoteConfig : gitSCM.getRepositories()) {
-                        for (URIish urIish : remoteConfig.getURIs()) {
-                            scmUrls.add(urIish.toString());
-                        }
-                    }
-                    String jenkinsFile = extendedSCMBinder.getRemoteJenkinsFile();
-                    envs.put(RemoteJenkinsFileItemListener.RJPP_SCM_ENV_NAME, scmUrls.toString());
-                    envs.put(RemoteJenkinsFileItemListener.RJPP_JFILE_ENV_NAME, jenkinsFile);
-                    envs.put(RemoteJenkinsFileItemListener.RJPP_LOCAL_MARKER_ENV_NAME, extendedSCMBinder.getLocalMarker());
-                    if( extendedSCMBinder.isMatchBranches())
-                        envs.put(RemoteJenkinsFileItemListener.RJPP_BRANCH_ENV_NAME, extendedSCMBinder.getRemoteJenkinsFileBranch());
-                    else
-                        envs.put(RemoteJenkinsFileItemListener.RJPP_BRANCH_ENV_NAME, gitSCM.getBranches().get(0).getName());
+            // Environment is requested by every step, compute the values once and keep them on the run
+            RemoteJenkinsFileAction remoteJenkinsFileAction = workflowRun.getAction(RemoteJenkinsFileAction.class);
+            Map<String, String> environment = remoteJenkinsFileAction != null ? remoteJenkinsFileAction.getEnvironment() : null;
+            if (environment == null) {
+                environment = this.computeEnvironment(workflowRun, remoteJenkinsFileAction);
+                if (environment != null && remoteJenkinsFileAction != null) {
+                    remoteJenkinsFileAction.setEnvironment(environment);
                 }
             }
+            if (environment != null) {
+                envs.putAll(environment);
+            }
         }
         super.buildEnvironmentFor(r, envs, listener);
     }
+
+    /**
+     * Computes the RJPP_* variables of a run
+     * @param workflowRun             Run
+     * @param remoteJenkinsFileAction Values resolved by the run itself, null for runs of older versions
+     * @return Variables or null if the run does not use a remote Jenkins file from Git
+     */
+    @CheckForNull
+    private Map<String, String> computeEnvironment(WorkflowRun workflowRun, RemoteJenkinsFileAction remoteJenkinsFileAction) {
+        WorkflowJob workflowJob = workflowRun.getParent();
+        FlowDefinition flowDefinition = workflowJob.getDefinition();
+        if (!(flowDefinition instanceof ExtendedSCMBinder)) {
+            return null;
+        }
+        ExtendedSCMBinder extendedSCMBinder = (ExtendedSCMBinder) flowDefinition;
+        if (extendedSCMBinder.getRemoteJenkinsFileUrl() != null) {
+            // Jenkins file is read over HTTP, the run records the branch it was read from
+            if (remoteJenkinsFileAction == null) {
+                return null;
+            }
+            Map<String, String> environment = new HashMap<>();
+            environment.put(RemoteJenkinsFileItemListener.RJPP_SCM_ENV_NAME, extendedSCMBinder.getRemoteJenkinsFileUrl());
+            environment.put(RemoteJenkinsFileItemListener.RJPP_JFILE_ENV_NAME, remoteJenkinsFileAction.getJenkinsFile());
+            environment.put(RemoteJenkinsFileItemListener.RJPP_LOCAL_MARKER_ENV_NAME, extendedSCMBinder.getLocalMarker());
+            environment.put(RemoteJenkinsFileItemListener.RJPP_BRANCH_ENV_NAME, remoteJenkinsFileAction.getBranch());
+            return environment;
+        }
+        SCM remoteJenkinsFileSCM = extendedSCMBinder.getRemoteJenkinsFileSCM(workflowJob);
+        if (!(remoteJenkinsFileSCM instanceof GitSCM)) {
+            return null;
+        }
+        GitSCM gitSCM = (GitSCM) remoteJenkinsFileSCM;
+        StringJoiner scmUrls = new StringJoiner(",");
+        for (RemoteConfig remoteConfig : gitSCM.getRepositories()) {
+            for (URIish urIish : remoteConfig.getURIs()) {
+                scmUrls.add(urIish.toString());
+            }
+        }
+        // Runs of older versions only have the values of the definition
+        String jenkinsFile = extendedSCMBinder.getRemoteJenkinsFile();
+        if (remoteJenkinsFileAction != null && remoteJenkinsFileAction.getJenkinsFile() != null) {
+            jenkinsFile = remoteJenkinsFileAction.getJenkinsFile();
+        }
+        Map<String, String> environment = new HashMap<>();
+        environment.put(RemoteJenkinsFileItemListener.RJPP_SCM_ENV_NAME, scmUrls.toString());
+        environment.put(RemoteJenkinsFileItemListener.RJPP_JFILE_ENV_NAME, jenkinsFile);
+        environment.put(RemoteJenkinsFileItemListener.RJPP_LOCAL_MARKER_ENV_NAME, extendedSCMBinder.getLocalMarker());
+        if( extendedSCMBinder.isMatchBranches() && remoteJenkinsFileAction != null && remoteJenkinsFileAction.getBranch() != null)
+            environment.put(RemoteJenkinsFileItemListener.RJPP_BRANCH_ENV_NAME, remoteJenkinsFileAction.getBranch());
+        else if( extendedSCMBinder.isMatchBranches())
+            environment.put(RemoteJenkinsFileItemListener.RJPP_BRANCH_ENV_NAME, extendedSCMBinder.getRemoteJenkinsFileBranch());
+        else
+            environment.put(RemoteJenkinsFileItemListener.RJPP_BRANCH_ENV_NAME, gitSCM.getBranches().get(0).getName());
+        return environment;
+    }
 }
@@ -2,18 +2,29 @@ package org.jenkinsci.plugins.workflow.multibranch.extended;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Extension;
+import hudson.Util;
+import hudson.model.Item;
 import hudson.scm.SCM;
 import hudson.scm.SCMDescriptor;
+import hudson.util.ListBoxModel;
+import jenkins.branch.MultiBranchProject;
 import jenkins.scm.api.SCMSource;
 import jenkins.scm.api.SCMSourceCriteria;
 import org.apache.commons.lang.StringUtils;
 import org.jenkinsci.plugins.workflow.flow.FlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.jenkinsci.plugins.workflow.multibranch.WorkflowBranchProjectFactory;
 import org.jenkinsci.plugins.workflow.multibranch.extended.scm.ExtendedSCMBinder;
 import org.jenkinsci.plugins.workflow.multibranch.extended.scm.LocalMarkerSCMSourceCriteria;
+import org.jenkinsci.plugins.workflow.multibranch.extended.scm.RemoteJenkinsFileHttpProvider;
+import org.jenkinsci.plugins.workflow.multibranch.extended.scm.RemoteJenkinsFilePrefetcher;
+import org.jenkinsci.plugins.workflow.multibranch.extended.scm.RemoteJenkinsFileUrlIndex;
 import org.jenkinsci.plugins.workflow.multibranch.extended.scm.SCMFilter;
+import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
 
 import java.util.Collection;
 
@@ -33,6 +44,12 @@ public class RemoteJenkinsFileWorkflowBranchProjectFactory extends WorkflowBranc
     private String scmSourceBranchName = "master";
     private String fallbackBranch = "master";
     private Boolean lookupInParameters = false;
+    private Boolean lightweight = false;
+    private Boolean prefetch = false;
+    // Only new instances get minimal fetch, configurations saved before this option exists are read as null
+    private Boolean minimalFetch = true;
+    private String remoteJenkinsFileUrl;
+    private String remoteJenkinsFileCredentialsId;
 
 
 
@@ -67,6 +84,9 @@ public class RemoteJenkinsFileWorkflowBranchProjectFactory extends WorkflowBranc
     @DataBoundSetter
     public void setRemoteJenkinsFileSCM(SCM remoteJenkinsFileSCM) {
         this.remoteJenkinsFileSCM = remoteJenkinsFileSCM;
+        if (this.getOwner() != null) {
+            RemoteJenkinsFileUrlIndex.get().register(this, remoteJenkinsFileSCM);
+        }
     }
 
 
@@ -87,6 +107,17 @@ public class RemoteJenkinsFileWorkflowBranchProjectFactory extends WorkflowBranc
         this.lookupInParameters = lookupInParameters;
     }
 
+    /**
+     * Extends {@link WorkflowBranchProjectFactory}, registers the remote URLs once the factory is attached to a project
+     *
+     * @param owner {@link MultiBranchProject} which uses this factory
+     */
+    @Override
+    public void setOwner(MultiBranchProject<WorkflowJob, WorkflowRun> owner) {
+        super.setOwner(owner);
+        RemoteJenkinsFileUrlIndex.get().register(this, this.remoteJenkinsFileSCM);
+    }
+
     /**
      * Extends {@link WorkflowBranchProjectFactory}
      *
@@ -94,7 +125,13 @@ public class RemoteJenkinsFileWorkflowBranchProjectFactory extends WorkflowBranc
      */
     @Override
     protected FlowDefinition createDefinition() {
-        return new ExtendedSCMBinder(this.remoteJenkinsFile, this.remoteJenkinsFileSCM, this.scmSourceBranchName, this.matchBranches, this.fallbackBranch, this.remoteJenkinsFile, this.lookupInParameters, this.localMarker);
+        // Definitions are shared by all branch jobs, the branch is taken from the job of each run
+        ExtendedSCMBinder extendedSCMBinder = new ExtendedSCMBinder(this.remoteJenkinsFile, this.remoteJenkinsFileSCM, null, this.matchBranches, this.fallbackBranch, this.remoteJenkinsFile, this.lookupInParameters, this.localMarker);
+        extendedSCMBinder.setLightweight(this.getLightweight());
+        extendedSCMBinder.setMinimalFetch(this.getMinimalFetch());
+        extendedSCMBinder.setRemoteJenkinsFileUrl(this.remoteJenkinsFileUrl);
+        extendedSCMBinder.setRemoteJenkinsFileCredentialsId(this.remoteJenkinsFileCredentialsId);
+        return extendedSCMBinder;
     }
 
     /**
@@ -106,12 +143,17 @@ public class RemoteJenkinsFileWorkflowBranchProjectFactory extends WorkflowBranc
     @Override
     protected SCMSourceCriteria getSCMSourceCriteria(SCMSource source) {
         return (probe, taskListener) -> {
-            // Don't match if remote SCM of remoteFileName is not configured
-            if (this.remoteJenkinsFileSCM == null || StringUtils.isEmpty(this.remoteJenkinsFile)) {
+            // Don't match if neither remote SCM nor URL of remoteFileName is configured
+            if ((this.remoteJenkinsFileSCM == null && StringUtils.isEmpty(this.remoteJenkinsFileUrl)) || StringUtils.isEmpty(this.remoteJenkinsFile)) {
                 return false;
             }
-            this.setScmSourceBranchName(probe.name());
-            return LocalMarkerSCMSourceCriteria.matches(this.localMarker, probe, taskListener);
+            boolean matches = LocalMarkerSCMSourceCriteria.matches(this.localMarker, source, probe, taskListener);
+            if (matches && this.getPrefetch()) {
+                // Warm the Jenkins file cache while indexing, so that the first build does not wait for the remote repository
+                RemoteJenkinsFilePrefetcher.get().prefetch(this.remoteJenkinsFileSCM, this.remoteJenkinsFile, probe.name(),
+                        this.getMatchBranches(), this.fallbackBranch, source.getOwner());
+            }
+            return matches;
         };
     }
 
@@ -129,6 +171,10 @@ public class RemoteJenkinsFileWorkflowBranchProjectFactory extends WorkflowBranc
         public Collection<? extends SCMDescriptor<?>> getApplicableDescriptors() {
             return SCMFilter.filter();
         }
+
+        public ListBoxModel doFillRemoteJenkinsFileCredentialsIdItems(@AncestorInPath Item context, @QueryParameter String remoteJenkinsFileUrl, @QueryParameter String remoteJenkinsFileCredentialsId) {
+            return RemoteJenkinsFileHttpProvider.fillCredentialsIdItems(context, remoteJenkinsFileUrl, remoteJenkinsFileCredentialsId);
+        }
     }
 
     /**
@@ -176,7 +222,9 @@ public class RemoteJenkinsFileWorkflowBranchProjectFactory extends WorkflowBranc
     /**
      * Set scmSourceBranchName to be used in new scm definition with new branch name
      * @param scmSourceBranchName Current branch name which MultiBranch pipeline working on.
+     * @deprecated Branch name is taken from the branch job at build time, this value is not used anymore
      */
+    @Deprecated
     public void setScmSourceBranchName(String scmSourceBranchName) {
         this.scmSourceBranchName = scmSourceBranchName;
     }
@@ -184,7 +232,9 @@ public class RemoteJenkinsFileWorkflowBranchProjectFactory extends WorkflowBranc
     /**
      * Default getter method
      * @return scmSourceBranchName
+     * @deprecated see {@link #setScmSourceBranchName(String)}
      */
+    @Deprecated
     public String getScmSourceBranchName() {
         return scmSourceBranchName;
     }
@@ -197,4 +247,90 @@ public class RemoteJenkinsFileWorkflowBranchProjectFactory extends WorkflowBranc
     public void setFallbackBranch(String fallbackBranch) {
         this.fallbackBranch = fallbackBranch;
     }
-}
\ No newline at end of file
+
+    /**
+     * Jenkins {@link DataBoundSetter}
+     * @param lightweight True to read only the Jenkins file instead of a full checkout of the remote repository
+     */
+    @DataBoundSetter
+    public void setLightweight(boolean lightweight) {
+        this.lightweight = lightweight;
+    }
+
+    /**
+     * Default getter method
+     * @return lightweight
+     */
+    public boolean getLightweight() {
+        return lightweight != null && lightweight;
+    }
+
+    /**
+     * Jenkins {@link DataBoundSetter}
+     * @param prefetch True to resolve the Jenkins file of matched branches in the background while indexing
+     */
+    @DataBoundSetter
+    public void setPrefetch(boolean prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * Default getter method
+     * @return prefetch
+     */
+    public boolean getPrefetch() {
+        return prefetch != null && prefetch;
+    }
+
+    /**
+     * Jenkins {@link DataBoundSetter}
+     * @param minimalFetch True to fetch only the Jenkins file directory at depth 1 without tags for full checkouts
+     */
+    @DataBoundSetter
+    public void setMinimalFetch(boolean minimalFetch) {
+        this.minimalFetch = minimalFetch;
+    }
+
+    /**
+     * Default getter method
+     * @return minimalFetch, false for configurations which were saved before this option exists
+     */
+    public boolean getMinimalFetch() {
+        return Boolean.TRUE.equals(minimalFetch);
+    }
+
+    /**
+     * Jenkins {@link DataBoundSetter}
+     * @param remoteJenkinsFileUrl URL template of the raw Jenkins file with ${branch} and ${path} placeholders, read over
+     *                             HTTP instead of through the remote SCM
+     */
+    @DataBoundSetter
+    public void setRemoteJenkinsFileUrl(String remoteJenkinsFileUrl) {
+        this.remoteJenkinsFileUrl = Util.fixEmptyAndTrim(remoteJenkinsFileUrl);
+    }
+
+    /**
+     * Default getter method
+     * @return remoteJenkinsFileUrl
+     */
+    public String getRemoteJenkinsFileUrl() {
+        return remoteJenkinsFileUrl;
+    }
+
+    /**
+     * Jenkins {@link DataBoundSetter}
+     * @param remoteJenkinsFileCredentialsId Id of username and password credentials for HTTP reads of the Jenkins file
+     */
+    @DataBoundSetter
+    public void setRemoteJenkinsFileCredentialsId(String remoteJenkinsFileCredentialsId) {
+        this.remoteJenkinsFileCredentialsId = Util.fixEmpty(remoteJenkinsFileCredentialsId);
+    }
+
+    /**
+     * Default getter method
+     * @return remoteJenkinsFileCredentialsId
+     */
+    public String getRemoteJenkinsFileCredentialsId() {
+        return remoteJenkinsFileCredentialsId;
+    }
+}
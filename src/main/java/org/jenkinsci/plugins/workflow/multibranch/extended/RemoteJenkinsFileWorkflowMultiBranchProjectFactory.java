@@ -3,7 +3,10 @@ package org.jenkinsci.plugins.workflow.multibranch.extended;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Extension;
+import hudson.Util;
+import hudson.model.Item;
 import hudson.scm.SCM;
+import hudson.util.ListBoxModel;
 import jenkins.branch.MultiBranchProjectFactory;
 import jenkins.branch.MultiBranchProjectFactoryDescriptor;
 import jenkins.scm.api.SCMSource;
@@ -13,8 +16,11 @@ import org.jenkinsci.plugins.workflow.multibranch.AbstractWorkflowMultiBranchPro
 import org.jenkinsci.plugins.workflow.multibranch.WorkflowBranchProjectFactory;
 import org.jenkinsci.plugins.workflow.multibranch.WorkflowMultiBranchProject;
 import org.jenkinsci.plugins.workflow.multibranch.extended.scm.LocalMarkerSCMSourceCriteria;
+import org.jenkinsci.plugins.workflow.multibranch.extended.scm.RemoteJenkinsFileHttpProvider;
+import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
 
 /**
  * This class extends {@link AbstractWorkflowMultiBranchProjectFactory} to inject defined Jenkins file and repository in
@@ -27,6 +33,12 @@ public class RemoteJenkinsFileWorkflowMultiBranchProjectFactory extends Abstract
     private String localMarker = "";
     private String remoteJenkinsFile = "";
     private Boolean lookupInParameters = false;
+    private Boolean lightweight = false;
+    private Boolean prefetch = false;
+    // Only new instances get minimal fetch, configurations saved before this option exists are read as null
+    private Boolean minimalFetch = true;
+    private String remoteJenkinsFileUrl;
+    private String remoteJenkinsFileCredentialsId;
     private Boolean matchBranches = false;
     private String scmSourceBranchName = "master";
     private String fallbackBranch = "master";
@@ -103,12 +115,11 @@ public class RemoteJenkinsFileWorkflowMultiBranchProjectFactory extends Abstract
     @Override
     protected SCMSourceCriteria getSCMSourceCriteria(@NonNull SCMSource source) {
         return (probe, taskListener) -> {
-            // Don't match if remote SCM of remoteFileName is not configured
-            if (this.remoteJenkinsFileSCM == null || StringUtils.isEmpty(this.remoteJenkinsFile)) {
+            // Don't match if neither remote SCM nor URL of remoteFileName is configured
+            if ((this.remoteJenkinsFileSCM == null && StringUtils.isEmpty(this.remoteJenkinsFileUrl)) || StringUtils.isEmpty(this.remoteJenkinsFile)) {
                 return false;
             }
-            this.setScmSourceBranchName(probe.name());
-            return LocalMarkerSCMSourceCriteria.matches(this.localMarker, probe, taskListener);
+            return LocalMarkerSCMSourceCriteria.matches(this.localMarker, source, probe, taskListener);
         };
     }
 
@@ -153,11 +164,20 @@ public class RemoteJenkinsFileWorkflowMultiBranchProjectFactory extends Abstract
         public MultiBranchProjectFactory newInstance() {
             return new RemoteJenkinsFileWorkflowMultiBranchProjectFactory();
         }
+
+        public ListBoxModel doFillRemoteJenkinsFileCredentialsIdItems(@AncestorInPath Item context, @QueryParameter String remoteJenkinsFileUrl, @QueryParameter String remoteJenkinsFileCredentialsId) {
+            return RemoteJenkinsFileHttpProvider.fillCredentialsIdItems(context, remoteJenkinsFileUrl, remoteJenkinsFileCredentialsId);
+        }
     }
 
     @Override
     protected void customize(WorkflowMultiBranchProject project) {
         RemoteJenkinsFileWorkflowBranchProjectFactory projectFactory = new RemoteJenkinsFileWorkflowBranchProjectFactory(this.remoteJenkinsFile, this.localMarker, this.remoteJenkinsFileSCM, this.getMatchBranches(), this.fallbackBranch, this.lookupInParameters);
+        projectFactory.setLightweight(this.getLightweight());
+        projectFactory.setPrefetch(this.getPrefetch());
+        projectFactory.setMinimalFetch(this.getMinimalFetch());
+        projectFactory.setRemoteJenkinsFileUrl(this.remoteJenkinsFileUrl);
+        projectFactory.setRemoteJenkinsFileCredentialsId(this.remoteJenkinsFileCredentialsId);
         project.setProjectFactory(projectFactory);
     }
 
@@ -179,9 +199,11 @@ public class RemoteJenkinsFileWorkflowMultiBranchProjectFactory extends Abstract
     }
 
     /**
-     * Set  scmSourceBranchName to be used in new scm definition with new branch nameLocal
+     * Set scmSourceBranchName to be used in new scm definition with new branch name
      * @param scmSourceBranchName Current branch name which MultiBranch pipeline working on.
+     * @deprecated Branch name is taken from the branch job at build time, this value is not used anymore
      */
+    @Deprecated
     public void setScmSourceBranchName(String scmSourceBranchName) {
         this.scmSourceBranchName = scmSourceBranchName;
     }
@@ -189,7 +211,9 @@ public class RemoteJenkinsFileWorkflowMultiBranchProjectFactory extends Abstract
     /**
      * Default getter method
      * @return scmSourceBranchName
+     * @deprecated see {@link #setScmSourceBranchName(String)}
      */
+    @Deprecated
     public String getScmSourceBranchName() {
         return scmSourceBranchName;
     }
@@ -202,4 +226,90 @@ public class RemoteJenkinsFileWorkflowMultiBranchProjectFactory extends Abstract
     public void setFallbackBranch(String fallbackBranch) {
         this.fallbackBranch = fallbackBranch;
     }
+
+    /**
+     * Jenkins {@link DataBoundSetter}
+     * @param lightweight True to read only the Jenkins file instead of a full checkout of the remote repository
+     */
+    @DataBoundSetter
+    public void setLightweight(boolean lightweight) {
+        this.lightweight = lightweight;
+    }
+
+    /**
+     * Default getter method
+     * @return lightweight
+     */
+    public boolean getLightweight() {
+        return lightweight != null && lightweight;
+    }
+
+    /**
+     * Jenkins {@link DataBoundSetter}
+     * @param prefetch True to resolve the Jenkins file of matched branches in the background while indexing
+     */
+    @DataBoundSetter
+    public void setPrefetch(boolean prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * Default getter method
+     * @return prefetch
+     */
+    public boolean getPrefetch() {
+        return prefetch != null && prefetch;
+    }
+
+    /**
+     * Jenkins {@link DataBoundSetter}
+     * @param minimalFetch True to fetch only the Jenkins file directory at depth 1 without tags for full checkouts
+     */
+    @DataBoundSetter
+    public void setMinimalFetch(boolean minimalFetch) {
+        this.minimalFetch = minimalFetch;
+    }
+
+    /**
+     * Default getter method
+     * @return minimalFetch, false for configurations which were saved before this option exists
+     */
+    public boolean getMinimalFetch() {
+        return Boolean.TRUE.equals(minimalFetch);
+    }
+
+    /**
+     * Jenkins {@link DataBoundSetter}
+     * @param remoteJenkinsFileUrl URL template of the raw Jenkins file with ${branch} and ${path} placeholders, read over
+     *                             HTTP instead of through the remote SCM
+     */
+    @DataBoundSetter
+    public void setRemoteJenkinsFileUrl(String remoteJenkinsFileUrl) {
+        this.remoteJenkinsFileUrl = Util.fixEmptyAndTrim(remoteJenkinsFileUrl);
+    }
+
+    /**
+     * Default getter method
+     * @return remoteJenkinsFileUrl
+     */
+    public String getRemoteJenkinsFileUrl() {
+        return remoteJenkinsFileUrl;
+    }
+
+    /**
+     * Jenkins {@link DataBoundSetter}
+     * @param remoteJenkinsFileCredentialsId Id of username and password credentials for HTTP reads of the Jenkins file
+     */
+    @DataBoundSetter
+    public void setRemoteJenkinsFileCredentialsId(String remoteJenkinsFileCredentialsId) {
+        this.remoteJenkinsFileCredentialsId = Util.fixEmpty(remoteJenkinsFileCredentialsId);
+    }
+
+    /**
+     * Default getter method
+     * @return remoteJenkinsFileCredentialsId
+     */
+    public String getRemoteJenkinsFileCredentialsId() {
+        return remoteJenkinsFileCredentialsId;
+    }
 }
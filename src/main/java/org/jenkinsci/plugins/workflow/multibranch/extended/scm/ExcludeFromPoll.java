@@ -11,7 +11,7 @@ import hudson.plugins.git.GitSCM;
 import hudson.plugins.git.extensions.GitSCMExtension;
 import hudson.plugins.git.extensions.GitSCMExtensionDescriptor;
 import hudson.plugins.git.util.BuildData;
-import hudson.util.DescribableList;
+import hudson.scm.SCM;
 import jenkins.branch.OrganizationFolder;
 import org.jenkinsci.plugins.workflow.multibranch.WorkflowMultiBranchProject;
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -48,6 +48,20 @@ public class ExcludeFromPoll extends GitSCMExtension {
         }
     }
 
+    /**
+     * Checks if the SCM is excluded from poll. Checkouts of excluded SCMs are not recorded for polling at all.
+     * @param scm {@link SCM} to check
+     * @return true if {@link ExcludeFromPoll} is configured
+     */
+    public static boolean isExcluded(SCM scm) {
+        return scm instanceof GitSCM && ((GitSCM) scm).getExtensions().get(ExcludeFromPoll.class) != null;
+    }
+
+    /**
+     * New checkouts are not recorded for polling, but checkouts recorded by older versions of this plugin still are.
+     * Polling without a workspace lists the remote heads and never asks {@link #isRevExcluded}, so those checkouts
+     * would trigger builds. Polling with a workspace excludes their commits.
+     */
     @Override
     public boolean requiresWorkspaceForPolling() {
         return true;
@@ -55,12 +69,7 @@ public class ExcludeFromPoll extends GitSCMExtension {
 
     @Override
     public Boolean isRevExcluded(GitSCM scm, org.jenkinsci.plugins.gitclient.GitClient git, GitChangeSet commit, TaskListener listener, BuildData buildData) throws GitException {
-        DescribableList<GitSCMExtension, GitSCMExtensionDescriptor> extensions = scm.getExtensions();
-        for(GitSCMExtension gitSCMExtension : extensions) {
-            if( gitSCMExtension instanceof ExcludeFromPoll) {
-                return true;
-            }
-        }
-        return false;
+        // Only called for extensions of the polled SCM, so every commit is excluded without looking at it
+        return true;
     }
 }
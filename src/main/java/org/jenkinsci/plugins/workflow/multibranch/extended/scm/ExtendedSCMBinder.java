@@ -1,27 +1,64 @@
 package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.AbortException;
 import hudson.Extension;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.Computer;
 import hudson.model.Action;
 import hudson.model.Descriptor;
 import hudson.model.DescriptorVisibilityFilter;
+import hudson.model.Job;
 import hudson.model.ParameterValue;
 import hudson.model.ParametersAction;
+import hudson.model.Node;
 import hudson.model.TaskListener;
+import hudson.model.TopLevelItem;
 import hudson.plugins.git.BranchSpec;
+import hudson.plugins.git.GitException;
+import hudson.model.Queue;
+import hudson.model.Run;
 import hudson.plugins.git.GitSCM;
+import hudson.plugins.git.extensions.GitSCMExtension;
+import hudson.plugins.git.extensions.impl.CloneOption;
+import hudson.plugins.git.extensions.impl.SparseCheckoutPath;
+import hudson.plugins.git.extensions.impl.SparseCheckoutPaths;
+import hudson.plugins.git.util.BuildData;
 import hudson.scm.SCM;
+import hudson.slaves.WorkspaceList;
+import jenkins.branch.BranchProjectFactory;
+import jenkins.model.Jenkins;
+import jenkins.plugins.git.AbstractGitSCMSource;
+import jenkins.scm.api.SCMFileSystem;
+import jenkins.scm.api.SCMRevision;
+import jenkins.util.SystemProperties;
+import org.apache.commons.lang.StringUtils;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowFactoryAction2;
 import org.jenkinsci.plugins.workflow.cps.CpsScmFlowDefinition;
 import org.jenkinsci.plugins.workflow.flow.FlowDefinition;
 import org.jenkinsci.plugins.workflow.flow.FlowDefinitionDescriptor;
 import org.jenkinsci.plugins.workflow.flow.FlowExecution;
 import org.jenkinsci.plugins.workflow.flow.FlowExecutionOwner;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.multibranch.BranchJobProperty;
 import org.jenkinsci.plugins.workflow.multibranch.WorkflowMultiBranchProject;
+import org.jenkinsci.plugins.workflow.multibranch.extended.RemoteJenkinsFileWorkflowBranchProjectFactory;
+import org.jenkinsci.plugins.workflow.steps.scm.GenericSCMStep;
 
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 /**
  * This class consist of necessary methods for binding another Jenkins file from another repository to Multibranch pipeline.
@@ -36,11 +73,20 @@ public class ExtendedSCMBinder extends FlowDefinition {
     private String localMarker = "";
     private Boolean lookupInParameters = false;
     private Boolean matchBranches = false;
-    private final SCM remoteJenkinsFileSCM;
+    // Not saved with the branch job, resolved from the factory of the multibranch project which owns the job. Job
+    // definitions of older versions still load their own copy, it is replaced once the owning job is known.
+    private transient SCM remoteJenkinsFileSCM;
     private String scmSourceBranchName = "master";
     private String fallbackBranch = "master";
-    private final String matchBranchFailMessage;
-    private final String matchBranchFallbackMessage;
+    // Only read from job definitions of older versions, messages are built from the branch of the run
+    private transient String matchBranchFailMessage;
+    private transient String matchBranchFallbackMessage;
+    private Boolean lightweight = false;
+    // Only new instances get minimal fetch, configurations saved before this option exists are read as null
+    private Boolean minimalFetch = true;
+    // Alternative to the remote SCM, URL template of the raw Jenkins file, see RemoteJenkinsFileHttpProvider
+    private String remoteJenkinsFileUrl;
+    private String remoteJenkinsFileCredentialsId;
 
 
     /**
@@ -56,13 +102,22 @@ public class ExtendedSCMBinder extends FlowDefinition {
         this.scmSourceBranchName = scmSourceBranchName;
         this.remoteJenkinsFileBranch = scmSourceBranchName;
         this.fallbackBranch = fallbackBranch;
-        this.matchBranchFailMessage = "Failed to checkout for " + this.scmSourceBranchName + " branch for Jenkins File.";
-        this.matchBranchFallbackMessage = "Try to checkout " + this.fallbackBranch + " branch for Jenkins File.  ";
         this.originJenkinsFileDefinition = originJenkinsFileDefinition;
         this.lookupInParameters = lookupInParameters;
         this.localMarker = localMarker;
     }
 
+    /**
+     * Drops the values which job definitions of older versions saved, but which are not used anymore.
+     *
+     * @return this
+     */
+    protected Object readResolve() {
+        this.matchBranchFailMessage = null;
+        this.matchBranchFallbackMessage = null;
+        return this;
+    }
+
     /**
      * Overwrites create method of FlowDefinition class. This methods sets the defined Jenkins file and defined SCM on
      * Remote Jenkins Plugin to Pipeline job which will be created by MultiBranch Pipeline.
@@ -75,6 +130,28 @@ public class ExtendedSCMBinder extends FlowDefinition {
      */
     @Override
     public FlowExecution create(FlowExecutionOwner handle, TaskListener listener, List<? extends Action> actions) throws Exception {
+        RemoteJenkinsFileTimingAction timing = new RemoteJenkinsFileTimingAction();
+        long started = System.nanoTime();
+        try {
+            return this.create(handle, listener, actions, timing);
+        } finally {
+            timing.setTotal(started);
+            Run<?, ?> run = this.getRun(handle);
+            if (run != null) {
+                run.addOrReplaceAction(timing);
+            }
+        }
+    }
+
+    private FlowExecution create(FlowExecutionOwner handle, TaskListener listener, List<? extends Action> actions, RemoteJenkinsFileTimingAction timing) throws Exception {
+        Run<?, ?> run = this.getRun(handle);
+        boolean http = StringUtils.isNotEmpty(this.remoteJenkinsFileUrl);
+        if (!http && this.getRemoteJenkinsFileSCM(run == null ? null : run.getParent()) == null) {
+            throw new AbortException("Remote Jenkins File SCM is not defined, check the project factory of " + (run == null ? "the job" : run.getParent().getParent().getFullName()));
+        }
+        // Resolved values are kept local and recorded on the run, the definition is shared by all runs of the job
+        String jenkinsFile = this.remoteJenkinsFile;
+        long phaseStarted = System.nanoTime();
         // Be sure that old versions of this plugin is working
         if( this.lookupInParameters != null && this.originJenkinsFileDefinition != null) {
             if (this.lookupInParameters && this.originJenkinsFileDefinition.startsWith("$")) {
@@ -96,28 +173,524 @@ public class ExtendedSCMBinder extends FlowDefinition {
                     }
                 }
 
-                this.remoteJenkinsFile = newJenkinsFile;
+                jenkinsFile = newJenkinsFile;
             }
+            timing.record(RemoteJenkinsFileTimingAction.PARAMETER_LOOKUP, phaseStarted);
         }
 
+        if (http) {
+            return this.createFromHttp(jenkinsFile, handle, listener, actions, timing);
+        }
 
         if (this.matchBranches && this.remoteJenkinsFileSCM instanceof GitSCM) {
+            // Branch name is taken from the branch job of the run, so that nothing is shared between branch jobs
+            String sourceBranchName = this.getSourceBranchName(handle);
+            // Pick branch or fallback branch from the ref table of the remote repository before any checkout
+            phaseStarted = System.nanoTime();
+            String matchedBranch = this.resolveMatchedBranch(handle, jenkinsFile, sourceBranchName, listener);
+            timing.record(RemoteJenkinsFileTimingAction.BRANCH_MATCHING, phaseStarted);
+            if (matchedBranch != null) {
+                return this.createFromRemote(this.generateSCMWithNewBranch(matchedBranch), jenkinsFile, handle, listener, actions, timing);
+            }
+            // Ref table is not available, try the checkout and fall back on failure
+            phaseStarted = System.nanoTime();
+            int phasesBefore = timing.getPhaseCount();
             try {
-                this.remoteJenkinsFileBranch = this.scmSourceBranchName;
-                return new CpsScmFlowDefinition(this.generateSCMWithNewBranch(this.scmSourceBranchName), this.remoteJenkinsFile).create(handle, listener, actions);
+                this.record(handle, jenkinsFile, sourceBranchName, false);
+                return this.createFromRemote(this.generateSCMWithNewBranch(sourceBranchName), jenkinsFile, handle, listener, actions, timing);
             } catch (Exception ex) {
                 if (ex instanceof AbortException) {
+                    // Phases of the failed attempt are recorded as a single one
+                    timing.replace(phasesBefore, RemoteJenkinsFileTimingAction.FAILED_MATCH_CHECKOUT, phaseStarted);
                     // This can be reason of there is no branch named in the Remote Jenkinsfile Provider Repository
                     // Fallback to master branch
-                    listener.getLogger().println(this.matchBranchFailMessage);
-                    listener.getLogger().println(this.matchBranchFallbackMessage);
-                    this.remoteJenkinsFileBranch = this.fallbackBranch;
-                    return new CpsScmFlowDefinition(this.generateSCMWithNewBranch(this.fallbackBranch), this.remoteJenkinsFile).create(handle, listener, actions);
+                    this.printFallbackMessages(sourceBranchName, listener);
+                    this.record(handle, jenkinsFile, this.fallbackBranch, true);
+                    return this.createFromRemote(this.generateSCMWithNewBranch(this.fallbackBranch), jenkinsFile, handle, listener, actions, timing);
                 }
             }
         }
         // If matchBranches not checked or SCM is not GitSCM, return with Remote Jenkinsfile Provider SCM as defined in Jenkins
-        return new CpsScmFlowDefinition(this.remoteJenkinsFileSCM, this.remoteJenkinsFile).create(handle, listener, actions);
+        // Only a single concrete branch is recorded, specifiers like */master or wildcards are not a branch name
+        String configuredBranch = this.remoteJenkinsFileSCM instanceof GitSCM ? RemoteGitSupport.getSingleBranchName((GitSCM) this.remoteJenkinsFileSCM) : null;
+        this.record(handle, jenkinsFile, configuredBranch, false);
+        return this.createFromRemote(this.remoteJenkinsFileSCM, jenkinsFile, handle, listener, actions, timing);
+    }
+
+    /**
+     * Creates the flow execution from the Jenkins file which is read over HTTP with {@link RemoteJenkinsFileHttpProvider}.
+     * With Match Branches option, the Jenkins file of the fallback branch is read if the branch has none.
+     *
+     * @param jenkinsFile Path of the Jenkins file for the run
+     * @param handle      {@link FlowExecutionOwner}
+     * @param listener    {@link TaskListener}
+     * @param actions     List of {@link Action}
+     * @param timing      {@link RemoteJenkinsFileTimingAction} to record the phases in
+     * @return {@link FlowExecution}
+     * @throws Exception
+     */
+    private FlowExecution createFromHttp(String jenkinsFile, FlowExecutionOwner handle, TaskListener listener, List<? extends Action> actions, RemoteJenkinsFileTimingAction timing) throws Exception {
+        Run<?, ?> run = this.getRun(handle);
+        String scriptPath = run == null ? jenkinsFile : run.getEnvironment(listener).expand(jenkinsFile);
+        boolean matchBranches = Boolean.TRUE.equals(this.matchBranches);
+        // Without Match Branches, the branch of the remote SCM is used if one is defined
+        String branch = matchBranches ? this.getSourceBranchName(handle) : this.fallbackBranch;
+        SCM remoteJenkinsFileSCM = this.getRemoteJenkinsFileSCM(run == null ? null : run.getParent());
+        if (!matchBranches && remoteJenkinsFileSCM instanceof GitSCM) {
+            String configuredBranch = RemoteGitSupport.getSingleBranchName((GitSCM) remoteJenkinsFileSCM);
+            if (configuredBranch != null) {
+                branch = configuredBranch;
+            }
+        }
+        long phaseStarted = System.nanoTime();
+        RemoteJenkinsFileHttpProvider provider = RemoteJenkinsFileHttpProvider.get();
+        String script = provider.read(this.remoteJenkinsFileUrl, branch, scriptPath, this.remoteJenkinsFileCredentialsId, run == null ? null : run.getParent());
+        boolean fallback = false;
+        if (script == null && matchBranches && !branch.equals(this.fallbackBranch)) {
+            this.printFallbackMessages(branch, listener);
+            fallback = true;
+            branch = this.fallbackBranch;
+            script = provider.read(this.remoteJenkinsFileUrl, branch, scriptPath, this.remoteJenkinsFileCredentialsId, run == null ? null : run.getParent());
+        }
+        timing.record(RemoteJenkinsFileTimingAction.HTTP_READ, phaseStarted);
+        this.record(handle, jenkinsFile, branch, fallback);
+        String url = RemoteJenkinsFileHttpProvider.expand(this.remoteJenkinsFileUrl, branch, scriptPath);
+        if (script == null) {
+            throw new AbortException("Unable to find " + scriptPath + " at " + url);
+        }
+        listener.getLogger().println("Obtained " + scriptPath + " from " + url);
+        return createFromScript(script, handle, listener, actions, timing);
+    }
+
+    /**
+     * Decides between the matching branch and the fallback branch from the heads of the remote repository, and records
+     * the decision on the run.
+     *
+     * @param handle           {@link FlowExecutionOwner}
+     * @param jenkinsFile      Path of the Jenkins file for the run
+     * @param sourceBranchName Branch name of the branch job which is being built
+     * @param listener         {@link TaskListener}
+     * @return Branch to use or null if the heads of the remote repository can not be listed
+     * @throws Exception
+     */
+    String resolveMatchedBranch(FlowExecutionOwner handle, String jenkinsFile, String sourceBranchName, TaskListener listener) throws Exception {
+        Run<?, ?> run = this.getRun(handle);
+        GitSCM gitSCM = (GitSCM) this.remoteJenkinsFileSCM;
+        String remoteUrl = RemoteGitSupport.getSingleRemoteUrl(gitSCM);
+        if (run == null || remoteUrl == null) {
+            return null;
+        }
+        if (MissingBranchCache.get().isMissing(remoteUrl, sourceBranchName)) {
+            // Branch was recently found missing, go straight to fallback branch
+            this.printFallbackMessages(sourceBranchName, listener);
+            this.record(handle, jenkinsFile, this.fallbackBranch, true);
+            return this.fallbackBranch;
+        }
+        Map<String, String> heads;
+        try {
+            heads = RemoteRefTable.get().getHeads(gitSCM, remoteUrl, run.getParent(), listener);
+        } catch (IOException | GitException ex) {
+            listener.getLogger().println("Unable to list branches of " + remoteUrl + ": " + ex.getMessage());
+            return null;
+        }
+        boolean fallback = !heads.containsKey(sourceBranchName);
+        if (fallback) {
+            // There is no branch named in the Remote Jenkinsfile Provider Repository
+            MissingBranchCache.get().markMissing(remoteUrl, sourceBranchName);
+            this.printFallbackMessages(sourceBranchName, listener);
+        }
+        String branch = fallback ? this.fallbackBranch : sourceBranchName;
+        this.record(handle, jenkinsFile, branch, fallback);
+        return branch;
+    }
+
+    /**
+     * Branch name of the branch job which is being built, taken from its {@link BranchJobProperty}. Jobs outside of a
+     * multibranch project use the branch name given at construction time or, if there is none, the fallback branch.
+     *
+     * @param handle {@link FlowExecutionOwner}
+     * @return Branch name
+     * @throws IOException
+     */
+    private String getSourceBranchName(FlowExecutionOwner handle) throws IOException {
+        Run<?, ?> run = this.getRun(handle);
+        if (run != null && run.getParent() instanceof WorkflowJob) {
+            BranchJobProperty branchJobProperty = ((WorkflowJob) run.getParent()).getProperty(BranchJobProperty.class);
+            if (branchJobProperty != null && branchJobProperty.getBranch() != null) {
+                return branchJobProperty.getBranch().getName();
+            }
+        }
+        return this.scmSourceBranchName != null ? this.scmSourceBranchName : this.fallbackBranch;
+    }
+
+    /**
+     * Starts resolving the Jenkins file for a run of the job which entered the queue, see
+     * {@link RemoteJenkinsFilePrefetcher#prefetchForRun}. Only lightweight resolution is started early, full checkouts
+     * are recorded on the run and can only start with it, as do Jenkins files which are selected by a parameter. Jenkins
+     * files which are read over HTTP are not resolved early either, their reads are conditional anyway.
+     *
+     * @param job Branch job of the queued run
+     */
+    public void prefetchForRun(@NonNull Job<?, ?> job) {
+        if (!this.isLightweight() || StringUtils.isNotEmpty(this.remoteJenkinsFileUrl) || (Boolean.TRUE.equals(this.lookupInParameters) && this.originJenkinsFileDefinition != null && this.originJenkinsFileDefinition.startsWith("$"))) {
+            return;
+        }
+        String branchName = this.scmSourceBranchName;
+        if (job instanceof WorkflowJob) {
+            BranchJobProperty branchJobProperty = ((WorkflowJob) job).getProperty(BranchJobProperty.class);
+            if (branchJobProperty != null && branchJobProperty.getBranch() != null) {
+                branchName = branchJobProperty.getBranch().getName();
+            }
+        }
+        if (branchName == null) {
+            return;
+        }
+        RemoteJenkinsFilePrefetcher.get().prefetchForRun(this.getRemoteJenkinsFileSCM(job), this.remoteJenkinsFile, branchName,
+                Boolean.TRUE.equals(this.matchBranches), this.fallbackBranch, job);
+    }
+
+    private void printFallbackMessages(String sourceBranchName, TaskListener listener) {
+        listener.getLogger().println("Failed to checkout for " + sourceBranchName + " branch for Jenkins File.");
+        listener.getLogger().println("Try to checkout " + this.fallbackBranch + " branch for Jenkins File.  ");
+    }
+
+    private void record(FlowExecutionOwner handle, String jenkinsFile, String branch, boolean fallback) throws IOException {
+        Run<?, ?> run = this.getRun(handle);
+        if (run != null) {
+            run.addOrReplaceAction(new RemoteJenkinsFileAction(jenkinsFile, branch, fallback));
+        }
+    }
+
+    /**
+     * Creates the flow execution from the given remote SCM. In lightweight mode, a Jenkins file which was resolved by
+     * {@link RemoteJenkinsFileQueueListener} while the run was waiting in the queue is used if it was read from the
+     * current remote revision. In lightweight mode, or if the remote repository is excluded from poll and change set,
+     * the script is handed to the CPS flow without any checkout when the remote revision can be resolved and its Jenkins
+     * file is in {@link JenkinsfileCache}. Full checkouts of other repositories are always done, they record the
+     * revision for polling and the changelog of the remote repository on the run. Otherwise the Jenkins
+     * file is read from {@link RemoteJenkinsFileMirror} or through {@link SCMFileSystem} in lightweight mode, or from
+     * the checkout of the revision in {@link RemoteJenkinsFileScriptStore}, or the remote repository is checked out as
+     * before, and the script is added to the cache for the revision which was read.
+     *
+     * @param scm         {@link SCM} to read the Jenkins file from
+     * @param jenkinsFile Path of the Jenkins file for the run
+     * @param handle      {@link FlowExecutionOwner}
+     * @param listener    {@link TaskListener}
+     * @param actions     List of {@link Action}
+     * @param timing      {@link RemoteJenkinsFileTimingAction} to record the phases in
+     * @return {@link FlowExecution}
+     * @throws Exception
+     */
+    FlowExecution createFromRemote(SCM scm, String jenkinsFile, FlowExecutionOwner handle, TaskListener listener, List<? extends Action> actions, RemoteJenkinsFileTimingAction timing) throws Exception {
+        Run<?, ?> run = this.getRun(handle);
+        long phaseStarted = System.nanoTime();
+        // Replayed builds carry their own script, leave them to the CPS flow definition
+        if (run == null || isReplay(actions)) {
+            try {
+                return new CpsScmFlowDefinition(scm, jenkinsFile).create(handle, listener, actions);
+            } finally {
+                timing.record(RemoteJenkinsFileTimingAction.CHECKOUT_AND_SCRIPT_LOADING, phaseStarted);
+            }
+        }
+        String scriptPath = run.getEnvironment(listener).expand(jenkinsFile);
+        GitSCM gitSCM = scm instanceof GitSCM ? (GitSCM) scm : null;
+        String remoteUrl = gitSCM == null ? null : RemoteGitSupport.getSingleRemoteUrl(gitSCM);
+        String branchName = gitSCM == null ? null : RemoteGitSupport.getSingleBranchName(gitSCM);
+        // Shared state is kept apart per credentials, a job never reads what was fetched with credentials it can not use
+        String credentialsKey = remoteUrl == null ? "" : RemoteGitSupport.getCredentialsKey(gitSCM, run.getParent());
+        String revision = null;
+        if (remoteUrl != null && branchName != null && (this.isLightweight() || isCheckoutRecordExcluded(scm))) {
+            phaseStarted = System.nanoTime();
+            try {
+                revision = RemoteRefTable.get().getHeads(gitSCM, remoteUrl, run.getParent(), listener).get(branchName);
+            } catch (IOException | GitException ex) {
+                listener.getLogger().println("Unable to resolve " + branchName + " in " + remoteUrl + ": " + ex.getMessage());
+            }
+            timing.record(RemoteJenkinsFileTimingAction.REF_LOOKUP, phaseStarted);
+            if (this.isLightweight()) {
+                // Jenkins file may have been resolved while the run was waiting in the queue
+                phaseStarted = System.nanoTime();
+                ResolvedJenkinsFile resolvedJenkinsFile = RemoteJenkinsFilePrefetcher.get().take(run.getParent().getFullName(), remoteUrl, branchName, scriptPath);
+                timing.record(RemoteJenkinsFileTimingAction.QUEUE_HAND_OFF, phaseStarted);
+                if (resolvedJenkinsFile != null && credentialsKey.equals(resolvedJenkinsFile.getCredentialsKey())
+                        && (revision == null || revision.equals(resolvedJenkinsFile.getRevision()))) {
+                    listener.getLogger().println("Obtained " + scriptPath + " for revision " + resolvedJenkinsFile.getRevision() + " of " + remoteUrl + ", resolved while the build was waiting in the queue");
+                    JenkinsfileCache.get().put(resolvedJenkinsFile.getKey(), resolvedJenkinsFile.getScript());
+                    return createFromScript(resolvedJenkinsFile.getScript(), handle, listener, actions, timing);
+                }
+            }
+            if (revision != null && JenkinsfileCache.get().isEnabled()) {
+                phaseStarted = System.nanoTime();
+                String script = JenkinsfileCache.get().get(new JenkinsfileCache.Key(remoteUrl, credentialsKey, revision, scriptPath));
+                timing.record(RemoteJenkinsFileTimingAction.CACHE_LOOKUP, phaseStarted);
+                timing.setCacheResult(script != null ? RemoteJenkinsFileTimingAction.CACHE_HIT : RemoteJenkinsFileTimingAction.CACHE_MISS);
+                if (script != null) {
+                    listener.getLogger().println("Obtained " + scriptPath + " from cache for revision " + revision + " of " + remoteUrl);
+                    return createFromScript(script, handle, listener, actions, timing);
+                }
+            }
+        }
+        if (this.isLightweight()) {
+            if (remoteUrl != null && branchName != null) {
+                // Read the Jenkins file directly from the shared mirror of the remote repository
+                phaseStarted = System.nanoTime();
+                ResolvedJenkinsFile resolvedJenkinsFile = this.readFromMirror(gitSCM, remoteUrl, branchName, revision, scriptPath, run, listener);
+                timing.record(RemoteJenkinsFileTimingAction.MIRROR_READ, phaseStarted);
+                timing.addJenkinsfileBytes(sizeOf(resolvedJenkinsFile.getScript()));
+                JenkinsfileCache.get().put(resolvedJenkinsFile.getKey(), resolvedJenkinsFile.getScript());
+                return createFromScript(resolvedJenkinsFile.getScript(), handle, listener, actions, timing);
+            }
+            phaseStarted = System.nanoTime();
+            String script = this.readLightweight(scm, run, scriptPath, remoteUrl, credentialsKey, listener);
+            timing.record(RemoteJenkinsFileTimingAction.LIGHTWEIGHT_READ, phaseStarted);
+            if (script != null) {
+                timing.addJenkinsfileBytes(sizeOf(script));
+                return createFromScript(script, handle, listener, actions, timing);
+            }
+        }
+        SCM checkoutSCM = getCheckoutSCM(scm, scriptPath, this.isMinimalFetch());
+        boolean shared = remoteUrl != null && isShared(checkoutSCM);
+        if (shared && revision != null) {
+            // Another branch job may have checked out the same commit already
+            phaseStarted = System.nanoTime();
+            String script = this.readFromStore(remoteUrl, credentialsKey, revision, scriptPath, run, listener);
+            timing.record(RemoteJenkinsFileTimingAction.STORE_READ, phaseStarted);
+            if (script != null) {
+                JenkinsfileCache.get().put(new JenkinsfileCache.Key(remoteUrl, credentialsKey, revision, scriptPath), script);
+                return createFromScript(script, handle, listener, actions, timing);
+            }
+        }
+        phaseStarted = System.nanoTime();
+        String script;
+        try {
+            script = this.checkout(checkoutSCM, scriptPath, shared ? remoteUrl : null, credentialsKey, run, listener);
+        } finally {
+            timing.record(RemoteJenkinsFileTimingAction.CHECKOUT, phaseStarted);
+        }
+        timing.addJenkinsfileBytes(sizeOf(script));
+        // Use the revision which was actually checked out, the branch may have moved since it was resolved
+        String builtRevision = remoteUrl == null ? null : getBuiltRevision(run, remoteUrl);
+        if (builtRevision != null) {
+            JenkinsfileCache.get().put(new JenkinsfileCache.Key(remoteUrl, credentialsKey, builtRevision, scriptPath), script);
+        }
+        return createFromScript(script, handle, listener, actions, timing);
+    }
+
+    /**
+     * Checks if a full checkout of the SCM records nothing on the run that polling or change sets use, so that builds
+     * may read the Jenkins file of a known revision without checking out the remote repository.
+     *
+     * @param scm {@link SCM} to check out
+     * @return true if the SCM has both {@link ExcludeFromPoll} and {@link ExcludeFromChangeSet}
+     */
+    static boolean isCheckoutRecordExcluded(SCM scm) {
+        return ExcludeFromPoll.isExcluded(scm) && ExcludeFromChangeSet.isExcluded(scm);
+    }
+
+    /**
+     * Checks if full checkouts of the SCM can be kept in {@link RemoteJenkinsFileScriptStore}. A build which reads
+     * from the store does not check out the remote repository, so it records neither the revision for polling nor the
+     * changelog. Only repositories which are excluded from both are shared, other checkouts stay in the script
+     * directory of the job.
+     *
+     * @param scm {@link SCM} to check out
+     * @return true if the checkout can be shared
+     */
+    private static boolean isShared(SCM scm) {
+        return RemoteJenkinsFileScriptStore.get().isEnabled() && isCheckoutRecordExcluded(scm);
+    }
+
+    private String readFromStore(String remoteUrl, String credentialsKey, String revision, String scriptPath,
+                                 Run<?, ?> run, TaskListener listener) throws IOException {
+        try {
+            String script = RemoteJenkinsFileScriptStore.get().read(remoteUrl, credentialsKey, revision, scriptPath, run.getParent().getFullName());
+            if (script != null) {
+                listener.getLogger().println("Obtained " + scriptPath + " from script store for revision " + revision + " of " + remoteUrl);
+            }
+            return script;
+        } catch (FileNotFoundException ex) {
+            // Checkout of another job may have been sparse, check out the commit for this Jenkins file
+            listener.getLogger().println(scriptPath + " is not in the script store for revision " + revision + " of " + remoteUrl);
+            return null;
+        }
+    }
+
+    /**
+     * Checks out the remote repository and reads the Jenkins file. Checkouts which can be shared go to the workspace of
+     * the repository in {@link RemoteJenkinsFileScriptStore}, which only fetches what is missing, and are copied to the
+     * store for the commit which was checked out. Other checkouts go to the script directory of the job, as
+     * {@link CpsScmFlowDefinition} does. Repositories with {@link ExcludeFromPoll} are not recorded for polling, so polling the
+     * job never needs a workspace or the remote repository for them, and repositories with {@link ExcludeFromChangeSet}
+     * are checked out without computing a changelog.
+     *
+     * @param scm        {@link SCM} to check out
+     * @param scriptPath Expanded path of the Jenkins file
+     * @param remoteUrl      Remote URL to share the checkout for, null to check out into the script directory of the job
+     * @param credentialsKey Key of the credentials the job uses, see {@link RemoteGitSupport#getCredentialsKey}
+     * @param run            {@link Run} which is being started
+     * @param listener       {@link TaskListener}
+     * @return Script content
+     * @throws Exception
+     */
+    private String checkout(SCM scm, String scriptPath, String remoteUrl, String credentialsKey, Run<?, ?> run, TaskListener listener) throws Exception {
+        Node node = Jenkins.get();
+        FilePath dir;
+        if (remoteUrl != null) {
+            dir = new FilePath(RemoteJenkinsFileScriptStore.get().getWorkspace(remoteUrl, credentialsKey));
+        } else if (run.getParent() instanceof TopLevelItem) {
+            FilePath baseWorkspace = node.getWorkspaceFor((TopLevelItem) run.getParent());
+            if (baseWorkspace == null) {
+                throw new IOException(node.getDisplayName() + " may be offline");
+            }
+            dir = baseWorkspace.withSuffix(SystemProperties.getString(WorkspaceList.class.getName(), "@") + "script");
+        } else {
+            dir = new FilePath(run.getRootDir());
+        }
+        Computer computer = node.toComputer();
+        if (computer == null) {
+            throw new IOException(node.getDisplayName() + " may be offline");
+        }
+        FilePath scriptFile = dir.child(scriptPath);
+        if (!scriptFile.absolutize().getRemote().replace('\\', '/').startsWith(dir.absolutize().getRemote().replace('\\', '/') + '/')) {
+            throw new AbortException(scriptFile + " references a file that is not inside " + dir);
+        }
+        GenericSCMStep delegate = new GenericSCMStep(scm);
+        delegate.setPoll(!ExcludeFromPoll.isExcluded(scm));
+        delegate.setChangelog(!ExcludeFromChangeSet.isExcluded(scm));
+        String script;
+        try (WorkspaceList.Lease lease = computer.getWorkspaceList().acquire(dir)) {
+            listener.getLogger().println("Checking out " + scm.getKey() + " into " + dir + " to read " + scriptPath);
+            int retries = Jenkins.get().getScmCheckoutRetryCount();
+            while (true) {
+                try {
+                    delegate.checkout(run, dir, listener, node.createLauncher(listener));
+                    break;
+                } catch (AbortException ex) {
+                    if (retries-- <= 0) {
+                        throw ex;
+                    }
+                    listener.getLogger().println("Retrying after 10 seconds: " + ex.getMessage());
+                    Thread.sleep(10000);
+                }
+            }
+            if (!scriptFile.exists()) {
+                throw new AbortException(scriptFile + " not found");
+            }
+            script = scriptFile.readToString();
+            String builtRevision = remoteUrl == null ? null : getBuiltRevision(run, remoteUrl);
+            if (builtRevision != null) {
+                // Files are copied while the lease is held, the next build may check out another commit into the workspace
+                RemoteJenkinsFileScriptStore.get().addCopy(remoteUrl, credentialsKey, builtRevision, new File(dir.getRemote()), run.getParent().getFullName());
+            }
+        }
+        return script;
+    }
+
+    private static FlowExecution createFromScript(String script, FlowExecutionOwner handle, TaskListener listener, List<? extends Action> actions, RemoteJenkinsFileTimingAction timing) throws Exception {
+        long phaseStarted = System.nanoTime();
+        try {
+            return new CpsFlowDefinition(script, true).create(handle, listener, actions);
+        } finally {
+            timing.record(RemoteJenkinsFileTimingAction.SCRIPT_LOADING, phaseStarted);
+        }
+    }
+
+    private static long sizeOf(String script) {
+        return script == null ? 0 : script.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /**
+     * Reads only the Jenkins file from {@link RemoteJenkinsFileMirror}.
+     *
+     * @param gitSCM     {@link GitSCM} to read the Jenkins file from
+     * @param remoteUrl  Remote URL of the SCM
+     * @param branchName Branch name of the SCM
+     * @param revision   Expected head of the branch, may be null
+     * @param scriptPath Expanded path of the Jenkins file
+     * @param run        {@link Run} which is being started
+     * @param listener   {@link TaskListener}
+     * @return {@link ResolvedJenkinsFile}
+     * @throws Exception
+     */
+    private ResolvedJenkinsFile readFromMirror(GitSCM gitSCM, String remoteUrl, String branchName, String revision, String scriptPath, Run<?, ?> run, TaskListener listener) throws Exception {
+        try {
+            ResolvedJenkinsFile resolvedJenkinsFile = RemoteJenkinsFileMirror.get().read(gitSCM, remoteUrl, branchName, revision, scriptPath, run.getParent(), listener);
+            listener.getLogger().println("Obtained " + scriptPath + " from mirror for revision " + resolvedJenkinsFile.getRevision() + " of " + remoteUrl);
+            return resolvedJenkinsFile;
+        } catch (FileNotFoundException ex) {
+            throw new AbortException("Unable to find " + scriptPath + " from " + gitSCM.getKey());
+        }
+    }
+
+    /**
+     * Reads only the Jenkins file through {@link SCMFileSystem} without checking out the remote repository.
+     *
+     * @param scm        {@link SCM} to read the Jenkins file from
+     * @param run        {@link Run} which is being started
+     * @param scriptPath Expanded path of the Jenkins file
+     * @param remoteUrl      Remote URL to cache the script for, null to skip caching
+     * @param credentialsKey Key of the credentials the job uses, see {@link RemoteGitSupport#getCredentialsKey}
+     * @param listener       {@link TaskListener}
+     * @return Script content or null if no {@link SCMFileSystem} implementation applies to the SCM
+     * @throws Exception
+     */
+    private String readLightweight(SCM scm, Run<?, ?> run, String scriptPath, String remoteUrl, String credentialsKey, TaskListener listener) throws Exception {
+        SCMFileSystem scmFileSystem;
+        try {
+            scmFileSystem = SCMFileSystem.of(run.getParent(), scm);
+        } catch (IOException | GitException ex) {
+            listener.getLogger().println("Lightweight checkout failed, falling back to full checkout: " + ex.getMessage());
+            return null;
+        }
+        if (scmFileSystem == null) {
+            listener.getLogger().println("Lightweight checkout support not available, falling back to full checkout.");
+            return null;
+        }
+        try (SCMFileSystem fileSystem = scmFileSystem) {
+            String script = fileSystem.child(scriptPath).contentAsString();
+            listener.getLogger().println("Obtained " + scriptPath + " from " + scm.getKey());
+            SCMRevision revision = fileSystem.getRevision();
+            if (remoteUrl != null && revision instanceof AbstractGitSCMSource.SCMRevisionImpl) {
+                JenkinsfileCache.get().put(new JenkinsfileCache.Key(remoteUrl, credentialsKey, ((AbstractGitSCMSource.SCMRevisionImpl) revision).getHash(), scriptPath), script);
+            }
+            return script;
+        } catch (FileNotFoundException ex) {
+            // Checkout of another job may have been sparse, check out the commit for this Jenkins file
+            listener.getLogger().println(scriptPath + " is not in the script store for revision " + revision + " of " + remoteUrl);
+            return null;
+        }
+    }
+
+    private Run<?, ?> getRun(FlowExecutionOwner handle) throws IOException {
+        Queue.Executable executable = handle.getExecutable();
+        if (executable instanceof Run) {
+            return (Run<?, ?>) executable;
+        }
+        return null;
+    }
+
+    private static boolean isReplay(List<? extends Action> actions) {
+        for (Action action : actions) {
+            if (action instanceof CpsFlowFactoryAction2) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the revision of the given remote which was checked out by the run.
+     * @param run       {@link Run}
+     * @param remoteUrl Remote URL of the Jenkins file repository
+     * @return Commit hash or null if the remote was not checked out
+     */
+    private static String getBuiltRevision(Run<?, ?> run, String remoteUrl) {
+        for (BuildData buildData : run.getActions(BuildData.class)) {
+            if (buildData.getRemoteUrls().contains(remoteUrl) && buildData.getLastBuiltRevision() != null) {
+                return buildData.getLastBuiltRevision().getSha1String();
+            }
+        }
+        return null;
     }
 
     /**
@@ -151,24 +724,119 @@ public class ExtendedSCMBinder extends FlowDefinition {
 
     }
 
+    /**
+     * SCM which is used for a full checkout of the remote Jenkins file
+     *
+     * @param scm          Remote Jenkins File SCM
+     * @param scriptPath   Expanded path of the Jenkins file
+     * @param minimalFetch Whether the minimal fetch profile is enabled
+     * @return {@link #withMinimalFetch} of a {@link GitSCM} if enabled, otherwise the given SCM
+     */
+    static SCM getCheckoutSCM(SCM scm, String scriptPath, boolean minimalFetch) {
+        return minimalFetch && scm instanceof GitSCM ? withMinimalFetch((GitSCM) scm, scriptPath) : scm;
+    }
+
+    /**
+     * Adds the minimal fetch profile to a remote Jenkins file SCM, which is only checked out to read a single file:
+     * shallow clone of depth 1 without tags and sparse checkout of the directory of the Jenkins file. Clone options
+     * which are configured by the user are kept as they are. Sparse checkout paths of the user are kept too, the
+     * directory of the Jenkins file is added to them if it is missing, otherwise the Jenkins file would not be checked
+     * out.
+     *
+     * @param gitSCM     {@link GitSCM} to check out
+     * @param scriptPath Expanded path of the Jenkins file
+     * @return new {@link GitSCM} with minimal fetch extensions
+     */
+    static GitSCM withMinimalFetch(GitSCM gitSCM, String scriptPath) {
+        List<GitSCMExtension> extensions = new ArrayList<>(gitSCM.getExtensions());
+        if (gitSCM.getExtensions().get(CloneOption.class) == null) {
+            CloneOption cloneOption = new CloneOption(true, true, null, null);
+            cloneOption.setDepth(1);
+            extensions.add(cloneOption);
+        }
+        String sparsePath = getSparsePath(scriptPath);
+        SparseCheckoutPaths sparseCheckoutPaths = gitSCM.getExtensions().get(SparseCheckoutPaths.class);
+        if (sparseCheckoutPaths == null) {
+            extensions.add(new SparseCheckoutPaths(Collections.singletonList(new SparseCheckoutPath(sparsePath))));
+        } else if (sparseCheckoutPaths.getSparseCheckoutPaths().stream().noneMatch(path -> sparsePath.equals(path.getPath()))) {
+            List<SparseCheckoutPath> paths = new ArrayList<>(sparseCheckoutPaths.getSparseCheckoutPaths());
+            paths.add(new SparseCheckoutPath(sparsePath));
+            extensions.set(extensions.indexOf(sparseCheckoutPaths), new SparseCheckoutPaths(paths));
+        }
+        return new GitSCM(gitSCM.getUserRemoteConfigs(), gitSCM.getBranches(), gitSCM.isDoGenerateSubmoduleConfigurations(), gitSCM.getSubmoduleCfg(), gitSCM.getBrowser(), gitSCM.getGitTool(), extensions);
+    }
+
+    /**
+     * Sparse checkout path of the directory of the Jenkins file. The script path is normalized first, so that paths
+     * like ./ci/Jenkinsfile or ci//Jenkinsfile give the same /ci/ as ci/Jenkinsfile. A Jenkins file in the root of the
+     * repository gives the path of the file itself.
+     *
+     * @param scriptPath Expanded path of the Jenkins file
+     * @return Sparse checkout path, starting with a slash
+     */
+    static String getSparsePath(String scriptPath) {
+        Deque<String> segments = new ArrayDeque<>();
+        for (String segment : scriptPath.split("/")) {
+            if ("..".equals(segment)) {
+                segments.pollLast();
+            } else if (!segment.isEmpty() && !".".equals(segment)) {
+                segments.addLast(segment);
+            }
+        }
+        String file = segments.pollLast();
+        if (segments.isEmpty()) {
+            return "/" + StringUtils.defaultString(file);
+        }
+        return "/" + String.join("/", segments) + "/";
+    }
+
     /**
      * Genereate new {@link SCM} object with a given branch name from defined Remote Jenkins File SCM definition
      * @param branchName Branch name to use in new {@link SCM}
      * @return new {@link SCM} defined with new branch
      */
-    private GitSCM generateSCMWithNewBranch(String branchName) {
+    GitSCM generateSCMWithNewBranch(String branchName) {
         GitSCM configuredGitSCM = (GitSCM) this.remoteJenkinsFileSCM;
         return new GitSCM(configuredGitSCM.getUserRemoteConfigs(), Collections.singletonList(new BranchSpec(branchName)), configuredGitSCM.isDoGenerateSubmoduleConfigurations(), configuredGitSCM.getSubmoduleCfg(), configuredGitSCM.getBrowser(), configuredGitSCM.getGitTool(), configuredGitSCM.getExtensions());
     }
 
+    /**
+     * Remote Jenkins File SCM which was resolved last. Use {@link #getRemoteJenkinsFileSCM(Job)} when the job is known,
+     * definitions which were loaded from disk resolve their SCM only then.
+     * @return {@link SCM} or null if it is not resolved yet
+     */
     public SCM getRemoteJenkinsFileSCM() {
         return remoteJenkinsFileSCM;
     }
 
+    /**
+     * Resolves the Remote Jenkins File SCM from the factory of the multibranch project which owns the job, so that all
+     * branch jobs share the single SCM configuration of the factory.
+     * @param owner Job which uses this definition
+     * @return {@link SCM} or null if neither the factory nor the definition has one
+     */
+    public SCM getRemoteJenkinsFileSCM(@CheckForNull Job<?, ?> owner) {
+        if (owner != null && owner.getParent() instanceof WorkflowMultiBranchProject) {
+            BranchProjectFactory<?, ?> factory = ((WorkflowMultiBranchProject) owner.getParent()).getProjectFactory();
+            if (factory instanceof RemoteJenkinsFileWorkflowBranchProjectFactory) {
+                SCM scm = ((RemoteJenkinsFileWorkflowBranchProjectFactory) factory).getRemoteJenkinsFileSCM();
+                if (scm != null) {
+                    this.remoteJenkinsFileSCM = scm;
+                }
+            }
+        }
+        return this.remoteJenkinsFileSCM;
+    }
+
     public String getRemoteJenkinsFile() {
         return remoteJenkinsFile;
     }
 
+    /**
+     * Branch from the time the definition was created. Runs record the branch they actually used in
+     * {@link RemoteJenkinsFileAction}, this value is only used for runs which were started by older versions.
+     * @return remoteJenkinsFileBranch
+     */
     public String getRemoteJenkinsFileBranch() {
         // This null check is required for the jobs which were using version 1.12 ( or older).
         // This value was not implemented on that version. Therefore, It becomes as null
@@ -181,6 +849,76 @@ public class ExtendedSCMBinder extends FlowDefinition {
         return matchBranches;
     }
 
+    /**
+     * Set lightweight resolution, which reads only the Jenkins file instead of a full checkout
+     * @param lightweight True to enable lightweight resolution
+     */
+    public void setLightweight(boolean lightweight) {
+        this.lightweight = lightweight;
+    }
+
+    public boolean isLightweight() {
+        // Null for the jobs which were created before this option exists
+        return this.lightweight != null && this.lightweight;
+    }
+
+    /**
+     * Set minimal fetch, which applies {@link #withMinimalFetch} to full checkouts of the remote repository
+     * @param minimalFetch True to enable minimal fetch
+     */
+    public void setMinimalFetch(boolean minimalFetch) {
+        this.minimalFetch = minimalFetch;
+    }
+
+    public boolean isMinimalFetch() {
+        // Null for the jobs which were created before this option exists, they keep their full checkout
+        return Boolean.TRUE.equals(this.minimalFetch);
+    }
+
+    /**
+     * Set the URL template of the raw Jenkins file, which is read over HTTP instead of through the remote SCM
+     * @param remoteJenkinsFileUrl URL template with {@code ${branch}} and {@code ${path}} placeholders, empty to use the remote SCM
+     */
+    public void setRemoteJenkinsFileUrl(String remoteJenkinsFileUrl) {
+        this.remoteJenkinsFileUrl = Util.fixEmptyAndTrim(remoteJenkinsFileUrl);
+    }
+
+    public String getRemoteJenkinsFileUrl() {
+        return remoteJenkinsFileUrl;
+    }
+
+    /**
+     * Set the credentials which are sent with HTTP reads of the Jenkins file
+     * @param remoteJenkinsFileCredentialsId Id of username and password credentials
+     */
+    public void setRemoteJenkinsFileCredentialsId(String remoteJenkinsFileCredentialsId) {
+        this.remoteJenkinsFileCredentialsId = Util.fixEmpty(remoteJenkinsFileCredentialsId);
+    }
+
+    public String getRemoteJenkinsFileCredentialsId() {
+        return remoteJenkinsFileCredentialsId;
+    }
+
+    /**
+     * Checks if the other definition was created from the same factory configuration. The remote SCM is not compared,
+     * it is resolved from the factory whenever it is used.
+     * @param other {@link ExtendedSCMBinder} to compare with
+     * @return true if both definitions behave the same
+     */
+    public boolean hasSameConfiguration(@NonNull ExtendedSCMBinder other) {
+        return Objects.equals(this.remoteJenkinsFile, other.remoteJenkinsFile)
+                && Objects.equals(this.originJenkinsFileDefinition, other.originJenkinsFileDefinition)
+                && Objects.equals(this.getLocalMarker(), other.getLocalMarker())
+                && Objects.equals(this.scmSourceBranchName, other.scmSourceBranchName)
+                && Objects.equals(this.fallbackBranch, other.fallbackBranch)
+                && Boolean.TRUE.equals(this.matchBranches) == Boolean.TRUE.equals(other.matchBranches)
+                && Boolean.TRUE.equals(this.lookupInParameters) == Boolean.TRUE.equals(other.lookupInParameters)
+                && this.isLightweight() == other.isLightweight()
+                && this.isMinimalFetch() == other.isMinimalFetch()
+                && Objects.equals(this.remoteJenkinsFileUrl, other.remoteJenkinsFileUrl)
+                && Objects.equals(this.remoteJenkinsFileCredentialsId, other.remoteJenkinsFileCredentialsId);
+    }
+
     public String getLocalMarker() {
         if( this.localMarker == null)
             return "";
@@ -0,0 +1,183 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import jenkins.util.SystemProperties;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory cache of remote Jenkins File contents.
+ * Entries are keyed by remote URL, resolved commit and script path, therefore they never become stale and only
+ * leave the cache by LRU eviction when the entry or size limit is reached.
+ * Only the script text is cached, it saves reading the Jenkins file again. Each CPS flow execution still parses and
+ * compiles the script in its own class loader, which resume and replay depend on.
+ */
+public final class JenkinsfileCache {
+
+    private static final int MAX_ENTRIES = SystemProperties.getInteger(JenkinsfileCache.class.getName() + ".maxEntries", 1000);
+    private static final long MAX_BYTES = SystemProperties.getLong(JenkinsfileCache.class.getName() + ".maxBytes", 64L * 1024 * 1024);
+    private static final JenkinsfileCache INSTANCE = new JenkinsfileCache(MAX_ENTRIES, MAX_BYTES);
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<Key, String> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    JenkinsfileCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the controller wide cache
+     * @return {@link JenkinsfileCache}
+     */
+    @NonNull
+    public static JenkinsfileCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Whether caching is enabled, set maxEntries or maxBytes to 0 to disable it
+     * @return true if enabled
+     */
+    public boolean isEnabled() {
+        return this.maxEntries > 0 && this.maxBytes > 0;
+    }
+
+    /**
+     * Returns the cached script for the given key and counts the hit or miss.
+     * @param key {@link Key}
+     * @return Script content or null if it is not cached
+     */
+    @CheckForNull
+    public synchronized String get(@NonNull Key key) {
+        String script = this.entries.get(key);
+        if (script == null) {
+            this.misses.incrementAndGet();
+        } else {
+            this.hits.incrementAndGet();
+        }
+        return script;
+    }
+
+    /**
+     * Adds the script to the cache and evicts least recently used entries over the limits.
+     * @param key    {@link Key}
+     * @param script Script content
+     */
+    public synchronized void put(@NonNull Key key, @NonNull String script) {
+        if (!isEnabled() || sizeOf(script) > this.maxBytes) {
+            return;
+        }
+        String previous = this.entries.put(key, script);
+        if (previous != null) {
+            this.bytes -= sizeOf(previous);
+        }
+        this.bytes += sizeOf(script);
+        Iterator<Map.Entry<Key, String>> iterator = this.entries.entrySet().iterator();
+        while ((this.entries.size() > this.maxEntries || this.bytes > this.maxBytes) && iterator.hasNext()) {
+            Map.Entry<Key, String> eldest = iterator.next();
+            this.bytes -= sizeOf(eldest.getValue());
+            iterator.remove();
+            this.evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Removes all entries, counters are kept.
+     */
+    public synchronized void clear() {
+        this.entries.clear();
+        this.bytes = 0;
+    }
+
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    public synchronized long getBytes() {
+        return this.bytes;
+    }
+
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    private static long sizeOf(String script) {
+        return 2L * script.length();
+    }
+
+    /**
+     * Cache key of a remote Jenkins File: remote URL, credentials key, resolved commit and script path. Jenkins files
+     * read with different credentials are cached apart, see {@link RemoteGitSupport#getCredentialsKey}.
+     */
+    public static final class Key {
+
+        private final String remoteUrl;
+        private final String credentialsKey;
+        private final String revision;
+        private final String scriptPath;
+
+        public Key(@NonNull String remoteUrl, @NonNull String credentialsKey, @NonNull String revision, @NonNull String scriptPath) {
+            this.remoteUrl = remoteUrl;
+            this.credentialsKey = credentialsKey;
+            this.revision = revision;
+            this.scriptPath = scriptPath;
+        }
+
+        public String getRemoteUrl() {
+            return remoteUrl;
+        }
+
+        public String getCredentialsKey() {
+            return credentialsKey;
+        }
+
+        public String getRevision() {
+            return revision;
+        }
+
+        public String getScriptPath() {
+            return scriptPath;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return remoteUrl.equals(key.remoteUrl) && credentialsKey.equals(key.credentialsKey) && revision.equals(key.revision) && scriptPath.equals(key.scriptPath);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(remoteUrl, credentialsKey, revision, scriptPath);
+        }
+
+        @Override
+        public String toString() {
+            return remoteUrl + "@" + revision + ":" + scriptPath;
+        }
+    }
+}
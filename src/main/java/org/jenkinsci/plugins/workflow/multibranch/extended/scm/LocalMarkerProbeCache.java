@@ -0,0 +1,152 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.XmlFile;
+import hudson.util.XStream2;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Persisted results of local marker probes, so that rescans do not probe branches whose head did not move.
+ * Entries are keyed by source id, head name, head identity and local marker, kept in LRU order up to a configurable
+ * number of entries and saved to {@code $JENKINS_HOME/caches/remote-file} shortly after they change.
+ */
+public final class LocalMarkerProbeCache {
+
+    private static final Logger LOGGER = Logger.getLogger(LocalMarkerProbeCache.class.getName());
+    private static final int MAX_ENTRIES = SystemProperties.getInteger(LocalMarkerProbeCache.class.getName() + ".maxEntries", 10000);
+    private static final long SAVE_DELAY_SECONDS = 10;
+    private static final XStream2 XSTREAM = new XStream2();
+    private static LocalMarkerProbeCache instance;
+
+    private final XmlFile file;
+    private final int maxEntries;
+    private final LinkedHashMap<String, Boolean> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicBoolean savePending = new AtomicBoolean();
+
+    LocalMarkerProbeCache(@NonNull File file, int maxEntries) {
+        this.file = new XmlFile(XSTREAM, file);
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Returns the cache of the running controller, loading it on first use
+     * @return {@link LocalMarkerProbeCache}
+     */
+    @NonNull
+    public static synchronized LocalMarkerProbeCache get() {
+        File file = new File(RemoteGitSupport.getCacheRoot(), "local-marker-probes.xml");
+        if (instance == null || !instance.file.getFile().equals(file)) {
+            instance = new LocalMarkerProbeCache(file, MAX_ENTRIES);
+            instance.load();
+        }
+        return instance;
+    }
+
+    /**
+     * Cache key of a probe result
+     * @param sourceId    Id of the {@link jenkins.scm.api.SCMSource}
+     * @param head        Name of the probed head
+     * @param revision    Identity of the probed head, see {@link LocalMarkerSCMSourceCriteria#revisionOf}, can be null
+     * @param localMarker Local marker
+     * @return key or null if the head can not be identified and must always be probed
+     */
+    @CheckForNull
+    public static String keyOf(@CheckForNull String sourceId, @NonNull String head, @CheckForNull String revision, @NonNull String localMarker) {
+        if (sourceId == null || revision == null || revision.isEmpty()) {
+            return null;
+        }
+        return sourceId + '\n' + head + '\n' + revision + '\n' + localMarker;
+    }
+
+    /**
+     * Result of a previous probe
+     * @param key Key from {@link #keyOf}
+     * @return True or false if the marker was found or not, null if the head was not probed yet
+     */
+    @CheckForNull
+    public synchronized Boolean get(@NonNull String key) {
+        return this.entries.get(key);
+    }
+
+    /**
+     * Records the result of a probe and schedules saving the cache
+     * @param key     Key from {@link #keyOf}
+     * @param matches True if the marker was found
+     */
+    public void put(@NonNull String key, boolean matches) {
+        synchronized (this) {
+            Boolean previous = this.entries.put(key, matches);
+            if (previous != null && previous == matches) {
+                return;
+            }
+            while (this.entries.size() > this.maxEntries) {
+                this.entries.remove(this.entries.keySet().iterator().next());
+            }
+        }
+        this.scheduleSave();
+    }
+
+    /**
+     * Forgets all probe results, so that every head is probed again
+     */
+    public void clear() {
+        synchronized (this) {
+            this.entries.clear();
+        }
+        this.scheduleSave();
+    }
+
+    private void scheduleSave() {
+        if (this.savePending.compareAndSet(false, true)) {
+            // Rescans record many results at once, save them together
+            Timer.get().schedule(this::save, SAVE_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    synchronized void load() {
+        if (!this.file.exists()) {
+            return;
+        }
+        try {
+            Object data = this.file.read();
+            if (data instanceof Map) {
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) data).entrySet()) {
+                    if (entry.getKey() instanceof String && entry.getValue() instanceof Boolean) {
+                        this.entries.put((String) entry.getKey(), (Boolean) entry.getValue());
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            // Cache only saves probes, start empty
+            LOGGER.log(Level.WARNING, "Unable to load " + this.file, ex);
+        }
+    }
+
+    void save() {
+        this.savePending.set(false);
+        Map<String, Boolean> data;
+        synchronized (this) {
+            data = new LinkedHashMap<>(this.entries);
+        }
+        try {
+            this.file.write(data);
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Unable to save " + this.file, ex);
+        }
+    }
+}
@@ -1,16 +1,78 @@
 package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import hudson.model.TaskListener;
+import jenkins.plugins.git.GitSCMSource;
+import jenkins.scm.api.SCMFile;
+import jenkins.scm.api.SCMProbe;
 import jenkins.scm.api.SCMProbeStat;
+import jenkins.scm.api.SCMSource;
 import jenkins.scm.api.SCMSourceCriteria.Probe;
+import jenkins.util.SystemProperties;
 import org.apache.commons.lang.StringUtils;
+import org.apache.tools.ant.types.selectors.SelectorUtils;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 
 public class LocalMarkerSCMSourceCriteria {
 
+    private static final int MAX_DEPTH = SystemProperties.getInteger(LocalMarkerSCMSourceCriteria.class.getName() + ".maxDepth", 10);
+    private static final int MAX_DIRECTORIES = SystemProperties.getInteger(LocalMarkerSCMSourceCriteria.class.getName() + ".maxDirectories", 1000);
+
     /**
-     * @param localMarker    path of an arbitrary local file which must be present for the project to be recognised
+     * Same as {@link #matches(String, Probe, TaskListener)}, but the result is taken from {@link LocalMarkerProbeCache}
+     * when the head of the branch did not change since it was last probed.
+     *
+     * @param localMarker  path of an arbitrary local file which must be present for the project to be recognised
+     * @param source       the {@link SCMSource} which is being scanned
+     * @param probe        the Probe being used for the current SCM Criteria
+     * @param taskListener the listener for the current scan task
+     * @return true if the local marker exists
+     * @throws IOException
+     */
+    public static boolean matches(String localMarker, SCMSource source, Probe probe, TaskListener taskListener) throws IOException {
+        if (StringUtils.isEmpty(localMarker)) {
+            return matches(localMarker, probe, taskListener);
+        }
+        String key = LocalMarkerProbeCache.keyOf(source.getId(), probe.name(), revisionOf(source, probe), localMarker);
+        if (key == null) {
+            return matches(localMarker, probe, taskListener);
+        }
+        Boolean cached = LocalMarkerProbeCache.get().get(key);
+        if (cached != null) {
+            taskListener.getLogger().format("      ‘%s’ %s (head not changed since last probe)%n", localMarker, cached ? "found" : "not found");
+            return cached;
+        }
+        boolean matches = matches(localMarker, probe, taskListener);
+        LocalMarkerProbeCache.get().put(key, matches);
+        return matches;
+    }
+
+    /**
+     * Identifies the probed head by what the probe itself tells, so that it always belongs to the probed files and no
+     * other call to the remote repository is needed. Probes do not tell their revision; probes of a
+     * {@link GitSCMSource} are made for a single commit and tell its commit time, which is used instead. Other sources
+     * may report the time of any change, their heads are not identified and always probed.
+     * @param source the {@link SCMSource} which is being scanned
+     * @param probe  the Probe being used for the current SCM Criteria
+     * @return Identity of the probed head or null if it can not be identified
+     */
+    @CheckForNull
+    static String revisionOf(SCMSource source, Probe probe) {
+        if (!(source instanceof GitSCMSource)) {
+            return null;
+        }
+        long lastModified = probe.lastModified();
+        return lastModified > 0 ? Long.toString(lastModified) : null;
+    }
+
+    /**
+     * @param localMarker    paths or Ant style patterns, separated by comma or new line, of which at least one must be
+     *                       present for the project to be recognised
      * @param probe        the Probe being used for the current SCM Criteria
      * @param taskListener the listener for the current scan task
      * @return
@@ -23,6 +85,101 @@ public class LocalMarkerSCMSourceCriteria {
             return true;
         }
 
+        List<String> markers = parseMarkers(localMarker);
+        if (markers.size() == 1 && !isPattern(markers.get(0))) {
+            return stat(markers.get(0), probe, taskListener);
+        }
+        // Evaluate all markers in one walk over the file tree, so that the cost does not depend on the number of markers
+        SCMFile root = probe instanceof SCMProbe ? ((SCMProbe) probe).getRoot() : null;
+        if (root != null) {
+            String found;
+            try {
+                found = findFirst(root, markers, MAX_DEPTH, MAX_DIRECTORIES, taskListener);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while listing files of " + probe.name(), e);
+            }
+            if (found == null) {
+                taskListener.getLogger().format("      none of ‘%s’ found%n", String.join("’, ‘", markers));
+                return false;
+            }
+            taskListener.getLogger().format("      ‘%s’ found%n", found);
+            return true;
+        }
+        // Probe can not list files, only plain paths can be checked, each of them with its own lookup
+        for (String marker : markers) {
+            if (isPattern(marker)) {
+                taskListener.getLogger().format("      ‘%s’ skipped, listing files is not supported by the SCM%n", marker);
+            } else if (stat(marker, probe, taskListener)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Splits the local marker configuration into markers
+     * @param localMarker Markers separated by comma or new line
+     * @return List of markers without surrounding white space and leading slash
+     */
+    static List<String> parseMarkers(String localMarker) {
+        List<String> markers = new ArrayList<>();
+        for (String marker : localMarker.split("[,\\r\\n]+")) {
+            marker = StringUtils.removeStart(marker.trim(), "/");
+            if (!marker.isEmpty()) {
+                markers.add(marker);
+            }
+        }
+        return markers;
+    }
+
+    static boolean isPattern(String marker) {
+        return StringUtils.containsAny(marker, "*?");
+    }
+
+    /**
+     * Walks the file tree breadth first, descending only into directories which can contain a match of any marker.
+     * Every listed directory costs a call to the SCM, patterns with {@code **} can match at any depth and would list
+     * the whole tree, so the walk stops at the given depth and number of listed directories.
+     * @param root           Root of the file tree
+     * @param markers        Paths or Ant style patterns
+     * @param maxDepth       Depth of the deepest directory which is listed, the root has depth 0
+     * @param maxDirectories Number of directories which are listed at most
+     * @param listener       the listener for the current scan task, told when the walk stops early
+     * @return Path of the first file or directory which matches a marker, or null
+     */
+    static String findFirst(SCMFile root, List<String> markers, int maxDepth, int maxDirectories, TaskListener listener) throws IOException, InterruptedException {
+        Deque<SCMFile> directories = new ArrayDeque<>();
+        directories.add(root);
+        int listed = 0;
+        while (!directories.isEmpty()) {
+            if (listed++ >= maxDirectories) {
+                listener.getLogger().format("      search stopped after listing %d directories%n", maxDirectories);
+                return null;
+            }
+            SCMFile directory = directories.poll();
+            for (SCMFile child : directory.children()) {
+                String path = child.getPath();
+                boolean descend = false;
+                for (String marker : markers) {
+                    if (SelectorUtils.matchPath(marker, path, true)) {
+                        return path;
+                    }
+                    descend |= SelectorUtils.matchPatternStart(marker, path, true);
+                }
+                if (descend && depthOf(path) <= maxDepth && child.isDirectory()) {
+                    directories.add(child);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static int depthOf(String path) {
+        return StringUtils.countMatches(path, "/") + 1;
+    }
+
+    private static boolean stat(String localMarker, Probe probe, TaskListener taskListener) throws IOException {
         SCMProbeStat stat = probe.stat(localMarker);
         switch (stat.getType()) {
             case NONEXISTENT:
@@ -0,0 +1,118 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import jenkins.util.SystemProperties;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers branches which do not exist in a remote Jenkins File repository, so that builds with Match Branches
+ * option go straight to the fallback branch. Entries expire after a configurable time and are invalidated by
+ * {@link RemoteJenkinsFileSCMEventListener} when a push creates the branch. Repositories which deliver push events
+ * keep their entries for the longer event TTL.
+ */
+public final class MissingBranchCache {
+
+    private static final long TTL_MILLIS = TimeUnit.SECONDS.toMillis(SystemProperties.getLong(MissingBranchCache.class.getName() + ".ttlSeconds", 600L));
+    private static final long EVENT_TTL_MILLIS = TimeUnit.SECONDS.toMillis(SystemProperties.getLong(MissingBranchCache.class.getName() + ".eventTtlSeconds", 3600L));
+    private static final MissingBranchCache INSTANCE = new MissingBranchCache(TTL_MILLIS, EVENT_TTL_MILLIS);
+
+    private final long ttlMillis;
+    private final long eventTtlMillis;
+    private final Map<List<String>, Long> entries = new ConcurrentHashMap<>();
+    private final Set<String> eventDrivenUrls = ConcurrentHashMap.newKeySet();
+
+    MissingBranchCache(long ttlMillis) {
+        this(ttlMillis, ttlMillis);
+    }
+
+    MissingBranchCache(long ttlMillis, long eventTtlMillis) {
+        this.ttlMillis = ttlMillis;
+        this.eventTtlMillis = eventTtlMillis;
+    }
+
+    /**
+     * Returns the controller wide cache
+     * @return {@link MissingBranchCache}
+     */
+    @NonNull
+    public static MissingBranchCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Whether the branch is known to be missing in the remote repository
+     * @param remoteUrl Remote URL
+     * @param branch    Branch name
+     * @return true if the branch was recently found missing
+     */
+    public boolean isMissing(@NonNull String remoteUrl, @NonNull String branch) {
+        List<String> key = Arrays.asList(remoteUrl, branch);
+        Long expiresAt = this.entries.get(key);
+        if (expiresAt == null) {
+            return false;
+        }
+        if (expiresAt < System.currentTimeMillis()) {
+            this.entries.remove(key, expiresAt);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Records that the branch does not exist in the remote repository
+     * @param remoteUrl Remote URL
+     * @param branch    Branch name
+     */
+    public void markMissing(@NonNull String remoteUrl, @NonNull String branch) {
+        if (this.ttlMillis > 0) {
+            long ttl = this.eventDrivenUrls.contains(remoteUrl) ? Math.max(this.ttlMillis, this.eventTtlMillis) : this.ttlMillis;
+            this.entries.put(Arrays.asList(remoteUrl, branch), System.currentTimeMillis() + ttl);
+        }
+    }
+
+    /**
+     * Forgets that the branch is missing
+     * @param remoteUrl Remote URL
+     * @param branch    Branch name
+     */
+    public void invalidate(@NonNull String remoteUrl, @NonNull String branch) {
+        this.entries.remove(Arrays.asList(remoteUrl, branch));
+    }
+
+    /**
+     * Forgets all missing branches of the remote repository
+     * @param remoteUrl Remote URL
+     */
+    public void invalidate(@NonNull String remoteUrl) {
+        this.entries.keySet().removeIf(key -> key.get(0).equals(remoteUrl));
+    }
+
+    /**
+     * Records that push events are delivered for the remote repository, missing branches recorded from now on are
+     * kept for the event TTL.
+     * @param remoteUrl Remote URL
+     */
+    public void onEvent(@NonNull String remoteUrl) {
+        this.eventDrivenUrls.add(remoteUrl);
+    }
+
+    /**
+     * Remote URLs which have at least one missing branch recorded
+     * @return Set of remote URLs
+     */
+    @NonNull
+    public Set<String> getRemoteUrls() {
+        Set<String> remoteUrls = new TreeSet<>();
+        for (List<String> key : this.entries.keySet()) {
+            remoteUrls.add(key.get(0));
+        }
+        return remoteUrls;
+    }
+}
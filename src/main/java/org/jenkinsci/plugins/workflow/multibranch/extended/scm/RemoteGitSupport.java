@@ -0,0 +1,219 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
+
+import com.cloudbees.plugins.credentials.Credentials;
+import com.cloudbees.plugins.credentials.CredentialsMatchers;
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.CredentialsStore;
+import com.cloudbees.plugins.credentials.common.StandardCredentials;
+import com.cloudbees.plugins.credentials.domains.Domain;
+import com.cloudbees.plugins.credentials.domains.URIRequirementBuilder;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.model.Item;
+import hudson.model.ModelObject;
+import hudson.model.TaskListener;
+import hudson.plugins.git.BranchSpec;
+import hudson.plugins.git.GitSCM;
+import hudson.plugins.git.UserRemoteConfig;
+import hudson.security.ACL;
+import jenkins.model.Jenkins;
+import org.apache.commons.lang.StringUtils;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.jenkinsci.plugins.gitclient.Git;
+import org.jenkinsci.plugins.gitclient.GitClient;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class consist of helper methods to talk to the remote Jenkins File repository without a workspace.
+ */
+public class RemoteGitSupport {
+
+    private RemoteGitSupport() {
+    }
+
+    /**
+     * Directory on the controller where the plugin keeps its caches.
+     * @return {@link File} of the cache root, may not exist yet
+     */
+    @NonNull
+    public static File getCacheRoot() {
+        return new File(new File(Jenkins.get().getRootDir(), "caches"), "remote-file");
+    }
+
+    /**
+     * Returns the only remote URL of the given SCM, if it has exactly one.
+     * @param gitSCM Remote Jenkins File SCM
+     * @return Remote URL or null if the SCM has zero or more than one remote
+     */
+    @CheckForNull
+    public static String getSingleRemoteUrl(@NonNull GitSCM gitSCM) {
+        List<UserRemoteConfig> userRemoteConfigs = gitSCM.getUserRemoteConfigs();
+        if (userRemoteConfigs.size() != 1) {
+            return null;
+        }
+        return StringUtils.trimToNull(userRemoteConfigs.get(0).getUrl());
+    }
+
+    /**
+     * Returns the only branch name of the given SCM, if it has exactly one concrete branch.
+     * @param gitSCM Remote Jenkins File SCM
+     * @return Branch name or null if the SCM has zero, more than one or a wildcard branch
+     */
+    @CheckForNull
+    public static String getSingleBranchName(@NonNull GitSCM gitSCM) {
+        List<BranchSpec> branches = gitSCM.getBranches();
+        if (branches.size() != 1) {
+            return null;
+        }
+        return toBranchName(branches.get(0).getName());
+    }
+
+    /**
+     * Converts a {@link BranchSpec} name into a plain branch name as it appears under refs/heads.
+     * @param branchSpec Branch specifier, e.g. master, *&#47;master or refs/heads/master
+     * @return Branch name or null if the specifier is not a concrete branch
+     */
+    @CheckForNull
+    public static String toBranchName(@CheckForNull String branchSpec) {
+        String name = StringUtils.trimToNull(branchSpec);
+        if (name == null) {
+            return null;
+        }
+        if (name.startsWith(Constants.R_HEADS)) {
+            name = name.substring(Constants.R_HEADS.length());
+        } else if (name.startsWith("*/")) {
+            name = name.substring(2);
+        } else if (name.startsWith("origin/")) {
+            name = name.substring("origin/".length());
+        }
+        if (name.isEmpty() || name.contains("*") || name.contains("$") || name.startsWith(":")) {
+            return null;
+        }
+        return name;
+    }
+
+    /**
+     * Creates a {@link GitClient} on the controller which carries the credentials of the given SCM.
+     * @param gitSCM   Remote Jenkins File SCM
+     * @param context  Item used for credentials lookup, may be null for global credentials
+     * @param listener {@link TaskListener}
+     * @return new {@link GitClient}
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @NonNull
+    public static GitClient createClient(@NonNull GitSCM gitSCM, @CheckForNull Item context, @NonNull TaskListener listener) throws IOException, InterruptedException {
+        FilePath workDir = new FilePath(getCacheRoot());
+        workDir.mkdirs();
+        return createClient(gitSCM, context, listener, workDir);
+    }
+
+    /**
+     * Creates a {@link GitClient} on the controller in the given directory which carries the credentials of the given SCM.
+     * @param gitSCM   Remote Jenkins File SCM
+     * @param context  Item used for credentials lookup, may be null for global credentials
+     * @param listener {@link TaskListener}
+     * @param workDir  Working directory of the client
+     * @return new {@link GitClient}
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @NonNull
+    public static GitClient createClient(@NonNull GitSCM gitSCM, @CheckForNull Item context, @NonNull TaskListener listener, @NonNull FilePath workDir) throws IOException, InterruptedException {
+        GitClient client = Git.with(listener, new EnvVars(EnvVars.masterEnvVars))
+                .in(workDir)
+                .using(gitSCM.getGitExe(Jenkins.get(), listener))
+                .getClient();
+        for (UserRemoteConfig userRemoteConfig : gitSCM.getUserRemoteConfigs()) {
+            StandardCredentials credentials = lookupCredentials(userRemoteConfig, context);
+            if (credentials != null) {
+                client.addCredentials(userRemoteConfig.getUrl(), credentials);
+            }
+        }
+        return client;
+    }
+
+    /**
+     * Returns the key of the credentials the given SCM uses in the given context. Shared state such as cached heads,
+     * mirrors and Jenkins files is kept apart per key, so that a job never sees what was read with credentials it
+     * can not use. Credentials are identified by their id and the context of the store which holds them, two jobs
+     * with the same key use the very same credentials.
+     *
+     * @param gitSCM  Remote Jenkins File SCM
+     * @param context Item used for credentials lookup, may be null for global credentials
+     * @return Key of the credentials, empty if the remote repository is read anonymously
+     */
+    @NonNull
+    public static String getCredentialsKey(@NonNull GitSCM gitSCM, @CheckForNull Item context) {
+        StringBuilder key = new StringBuilder();
+        for (UserRemoteConfig userRemoteConfig : gitSCM.getUserRemoteConfigs()) {
+            StandardCredentials credentials = lookupCredentials(userRemoteConfig, context);
+            if (credentials != null) {
+                if (key.length() > 0) {
+                    key.append(' ');
+                }
+                key.append(credentials.getId()).append('@').append(getStoreName(credentials, context));
+            }
+        }
+        return key.toString();
+    }
+
+    @CheckForNull
+    private static StandardCredentials lookupCredentials(UserRemoteConfig userRemoteConfig, Item context) {
+        String credentialsId = userRemoteConfig.getCredentialsId();
+        String url = userRemoteConfig.getUrl();
+        if (StringUtils.isEmpty(credentialsId) || StringUtils.isEmpty(url)) {
+            return null;
+        }
+        return CredentialsMatchers.firstOrNull(
+                CredentialsProvider.lookupCredentials(StandardCredentials.class, context, ACL.SYSTEM2, URIRequirementBuilder.fromUri(url).build()),
+                CredentialsMatchers.allOf(CredentialsMatchers.withId(credentialsId), GitClient.CREDENTIALS_MATCHER));
+    }
+
+    private static String getStoreName(StandardCredentials credentials, Item context) {
+        for (CredentialsStore store : CredentialsProvider.lookupStores(context == null ? Jenkins.get() : context)) {
+            for (Domain domain : store.getDomains()) {
+                for (Credentials candidate : store.getCredentials(domain)) {
+                    if (candidate == credentials) {
+                        ModelObject storeContext = store.getContext();
+                        return storeContext instanceof Item ? ((Item) storeContext).getFullName() : "";
+                    }
+                }
+            }
+        }
+        // Credentials which do not come from a store are only shared within the context
+        return context == null ? "" : context.getFullName() + "#";
+    }
+
+    /**
+     * Lists the branch heads of a remote repository with a single ls-remote call.
+     * @param gitSCM   Remote Jenkins File SCM which holds the credentials
+     * @param url      Remote URL to list
+     * @param context  Item used for credentials lookup
+     * @param listener {@link TaskListener}
+     * @return Map of branch name to commit hash
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @NonNull
+    public static Map<String, String> listHeads(@NonNull GitSCM gitSCM, @NonNull String url, @CheckForNull Item context, @NonNull TaskListener listener) throws IOException, InterruptedException {
+        GitClient client = createClient(gitSCM, context, listener);
+        Map<String, String> heads = new HashMap<>();
+        for (Map.Entry<String, ObjectId> entry : client.getRemoteReferences(url, null, true, false).entrySet()) {
+            String name = entry.getKey();
+            if (name.startsWith(Constants.R_HEADS)) {
+                name = name.substring(Constants.R_HEADS.length());
+            }
+            heads.put(name, entry.getValue().name());
+        }
+        return heads;
+    }
+}
@@ -0,0 +1,56 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
+
+import hudson.model.InvisibleAction;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class records on the run how the remote Jenkins file was resolved. The definition of a branch job is shared by
+ * all of its runs, so every value which is resolved at build time belongs here.
+ */
+public class RemoteJenkinsFileAction extends InvisibleAction {
+
+    private final String jenkinsFile;
+    private final String branch;
+    private final boolean fallback;
+    private Map<String, String> environment;
+
+    /**
+     * Constructor for the class.
+     *
+     * @param jenkinsFile Path of the Jenkins file which is used for the run, after parameter lookup
+     * @param branch      Branch of the remote Jenkins file repository which is used for the run
+     * @param fallback    True if the matching branch does not exist and fallback branch is used
+     */
+    public RemoteJenkinsFileAction(String jenkinsFile, String branch, boolean fallback) {
+        this.jenkinsFile = jenkinsFile;
+        this.branch = branch;
+        this.fallback = fallback;
+    }
+
+    public String getJenkinsFile() {
+        return jenkinsFile;
+    }
+
+    public String getBranch() {
+        return branch;
+    }
+
+    public boolean isFallback() {
+        return fallback;
+    }
+
+    /**
+     * Environment variables contributed to the run, computed once on first use
+     * @return RJPP_* variables or null if they are not computed yet
+     */
+    public synchronized Map<String, String> getEnvironment() {
+        return environment == null ? null : Collections.unmodifiableMap(environment);
+    }
+
+    public synchronized void setEnvironment(Map<String, String> environment) {
+        this.environment = new HashMap<>(environment);
+    }
+}
@@ -0,0 +1,256 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
+
+import com.cloudbees.plugins.credentials.CredentialsMatchers;
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.common.StandardListBoxModel;
+import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
+import com.cloudbees.plugins.credentials.domains.URIRequirementBuilder;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.AbortException;
+import hudson.ProxyConfiguration;
+import hudson.Util;
+import hudson.model.Item;
+import hudson.security.ACL;
+import hudson.util.ListBoxModel;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.StringJoiner;
+
+/**
+ * Reads the remote Jenkins file over HTTP from the raw file endpoint of a Git hosting service, as an alternative to
+ * the Remote Jenkins File SCM. The URL is built from a template with {@code ${branch}} and {@code ${path}}
+ * placeholders. Responses are kept with their ETag, later reads send {@code If-None-Match} and reuse the kept content
+ * when the server answers {@code 304 Not Modified}. A single {@link HttpClient} is shared, so that connections to the
+ * server are reused between reads. Redirects are followed here instead of by the client, credentials are only sent to
+ * the scheme, host and port of the URL they were selected for.
+ */
+public final class RemoteJenkinsFileHttpProvider {
+
+    public static final String BRANCH_PLACEHOLDER = "${branch}";
+    public static final String PATH_PLACEHOLDER = "${path}";
+    private static final int MAX_ENTRIES = SystemProperties.getInteger(RemoteJenkinsFileHttpProvider.class.getName() + ".maxEntries", 1000);
+    private static final long TIMEOUT_SECONDS = SystemProperties.getLong(RemoteJenkinsFileHttpProvider.class.getName() + ".timeoutSeconds", 30L);
+    private static final int MAX_REDIRECTS = 5;
+    private static RemoteJenkinsFileHttpProvider instance;
+
+    private final HttpClient client;
+    private final int maxEntries;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long notModified;
+
+    RemoteJenkinsFileHttpProvider(@NonNull HttpClient client, int maxEntries) {
+        this.client = client;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Returns the controller wide provider, its client uses the proxy configuration of the controller
+     * @return {@link RemoteJenkinsFileHttpProvider}
+     */
+    @NonNull
+    public static synchronized RemoteJenkinsFileHttpProvider get() {
+        if (instance == null) {
+            instance = new RemoteJenkinsFileHttpProvider(ProxyConfiguration.newHttpClientBuilder()
+                    .followRedirects(HttpClient.Redirect.NEVER)
+                    .connectTimeout(Duration.ofSeconds(TIMEOUT_SECONDS))
+                    .build(), MAX_ENTRIES);
+        }
+        return instance;
+    }
+
+    /**
+     * Reads the Jenkins file of a branch
+     * @param urlTemplate   URL template with {@code ${branch}} and {@code ${path}} placeholders
+     * @param branch        Branch to read the Jenkins file from
+     * @param scriptPath    Expanded path of the Jenkins file
+     * @param credentialsId Id of username and password credentials, sent with basic authentication, can be empty
+     * @param context       Item used for credentials lookup
+     * @return Script content or null if the server has no such file
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @CheckForNull
+    public String read(@NonNull String urlTemplate, @NonNull String branch, @NonNull String scriptPath, @CheckForNull String credentialsId, @CheckForNull Item context) throws IOException, InterruptedException {
+        String url = expand(urlTemplate, branch, scriptPath);
+        String authorization = null;
+        if (StringUtils.isNotEmpty(credentialsId)) {
+            StandardUsernamePasswordCredentials credentials = CredentialsMatchers.firstOrNull(
+                    CredentialsProvider.lookupCredentials(StandardUsernamePasswordCredentials.class, context, ACL.SYSTEM2, URIRequirementBuilder.fromUri(url).build()),
+                    CredentialsMatchers.withId(credentialsId));
+            if (credentials == null) {
+                throw new AbortException("Unable to find credentials " + credentialsId + " for " + url);
+            }
+            authorization = basic(credentials.getUsername(), credentials.getPassword().getPlainText());
+        }
+        return this.fetch(url, authorization);
+    }
+
+    /**
+     * Fetches a file, conditionally if a response with an ETag was kept for the URL. Redirects to another scheme, host
+     * or port are followed without the Authorization header.
+     * @param url           URL of the file
+     * @param authorization Value of the Authorization header, can be null
+     * @return Content or null if the server answers {@code 404 Not Found}
+     * @throws IOException if the server answers with another error
+     * @throws InterruptedException
+     */
+    @CheckForNull
+    String fetch(@NonNull String url, @CheckForNull String authorization) throws IOException, InterruptedException {
+        // Keep responses apart per identity, the server may answer differently
+        String key = url + '\n' + (authorization == null ? "" : Util.getDigestOf(authorization));
+        Entry entry;
+        synchronized (this) {
+            entry = this.entries.get(key);
+        }
+        URI origin = URI.create(url);
+        URI uri = origin;
+        HttpResponse<byte[]> response;
+        for (int redirects = 0; ; redirects++) {
+            HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                    .timeout(Duration.ofSeconds(TIMEOUT_SECONDS))
+                    .GET();
+            if (authorization != null && isSameOrigin(origin, uri)) {
+                request.header("Authorization", authorization);
+            }
+            if (entry != null) {
+                request.header("If-None-Match", entry.etag);
+            }
+            response = this.client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+            String location = response.headers().firstValue("Location").orElse(null);
+            if (!isRedirect(response.statusCode()) || location == null) {
+                break;
+            }
+            if (redirects >= MAX_REDIRECTS) {
+                throw new IOException("Unable to read " + url + ", too many redirects");
+            }
+            uri = uri.resolve(location);
+        }
+        int status = response.statusCode();
+        if (status == 304 && entry != null) {
+            synchronized (this) {
+                this.notModified++;
+            }
+            return entry.content;
+        }
+        if (status == 404) {
+            synchronized (this) {
+                this.entries.remove(key);
+            }
+            return null;
+        }
+        if (status != 200) {
+            throw new IOException("Unable to read " + url + ", server answered HTTP " + status);
+        }
+        String content = new String(response.body(), StandardCharsets.UTF_8);
+        String etag = response.headers().firstValue("ETag").orElse(null);
+        synchronized (this) {
+            if (etag == null) {
+                this.entries.remove(key);
+            } else {
+                this.entries.put(key, new Entry(etag, content));
+                while (this.entries.size() > this.maxEntries) {
+                    this.entries.remove(this.entries.keySet().iterator().next());
+                }
+            }
+        }
+        return content;
+    }
+
+    /**
+     * Builds the URL of a Jenkins file from the template. Branch and path are encoded segment by segment, slashes are
+     * kept as they are.
+     * @param urlTemplate URL template with {@code ${branch}} and {@code ${path}} placeholders
+     * @param branch      Branch name
+     * @param scriptPath  Path of the Jenkins file
+     * @return URL
+     */
+    @NonNull
+    public static String expand(@NonNull String urlTemplate, @NonNull String branch, @NonNull String scriptPath) {
+        return urlTemplate.replace(BRANCH_PLACEHOLDER, encodeSegments(branch))
+                .replace(PATH_PLACEHOLDER, encodeSegments(StringUtils.removeStart(scriptPath, "/")));
+    }
+
+    /**
+     * Credentials which can be selected for HTTP reads of the Jenkins file, for the descriptors of the factories
+     * @param context       Item which is being configured
+     * @param urlTemplate   URL template
+     * @param credentialsId Currently selected credentials
+     * @return {@link ListBoxModel}
+     */
+    @NonNull
+    public static ListBoxModel fillCredentialsIdItems(@CheckForNull Item context, @CheckForNull String urlTemplate, @CheckForNull String credentialsId) {
+        StandardListBoxModel result = new StandardListBoxModel();
+        if (context == null ? !Jenkins.get().hasPermission(Jenkins.ADMINISTER) : !context.hasPermission(Item.EXTENDED_READ)) {
+            return result.includeCurrentValue(credentialsId);
+        }
+        String url = urlTemplate == null ? "" : urlTemplate.replace(BRANCH_PLACEHOLDER, "").replace(PATH_PLACEHOLDER, "");
+        return result.includeEmptyValue()
+                .includeMatchingAs(ACL.SYSTEM2, context, StandardUsernamePasswordCredentials.class, URIRequirementBuilder.fromUri(url).build(), CredentialsMatchers.always())
+                .includeCurrentValue(credentialsId);
+    }
+
+    private static String encodeSegments(String value) {
+        StringJoiner encoded = new StringJoiner("/");
+        for (String segment : value.split("/", -1)) {
+            encoded.add(URLEncoder.encode(segment, StandardCharsets.UTF_8).replace("+", "%20"));
+        }
+        return encoded.toString();
+    }
+
+    private static boolean isRedirect(int status) {
+        return status == 301 || status == 302 || status == 303 || status == 307 || status == 308;
+    }
+
+    private static boolean isSameOrigin(URI origin, URI uri) {
+        return StringUtils.equalsIgnoreCase(origin.getScheme(), uri.getScheme())
+                && StringUtils.equalsIgnoreCase(origin.getHost(), uri.getHost())
+                && portOf(origin) == portOf(uri);
+    }
+
+    private static int portOf(URI uri) {
+        if (uri.getPort() != -1) {
+            return uri.getPort();
+        }
+        return "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+    }
+
+    private static String basic(String username, String password) {
+        return "Basic " + Base64.getEncoder().encodeToString((username + ':' + password).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Number of reads which were answered with {@code 304 Not Modified}
+     * @return count
+     */
+    public synchronized long getNotModified() {
+        return this.notModified;
+    }
+
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    private static final class Entry {
+
+        private final String etag;
+        private final String content;
+
+        private Entry(String etag, String content) {
+            this.etag = etag;
+            this.content = content;
+        }
+    }
+}
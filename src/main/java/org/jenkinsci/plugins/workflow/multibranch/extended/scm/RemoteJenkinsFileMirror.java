@@ -0,0 +1,171 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.AbortException;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.Item;
+import hudson.model.TaskListener;
+import hudson.plugins.git.GitException;
+import hudson.plugins.git.GitSCM;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.URIish;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.jenkinsci.plugins.gitclient.GitClient;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Controller wide mirror of remote Jenkins File repositories, one repository per remote URL and credentials without a
+ * working tree. Branches are fetched incrementally into the mirror and Jenkins files are read directly from the object
+ * database, so all branch jobs which use the same remote repository with the same credentials share a single copy of
+ * it. Jobs which use other credentials get their own mirror, see {@link RemoteGitSupport#getCredentialsKey}.
+ */
+public final class RemoteJenkinsFileMirror {
+
+    private static final String REMOTE_REFS = Constants.R_REMOTES + "origin/";
+    private static final RemoteJenkinsFileMirror INSTANCE = new RemoteJenkinsFileMirror();
+
+    private final Map<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+    private final SingleFlight<List<String>, ResolvedJenkinsFile> reads = new SingleFlight<>();
+
+    private RemoteJenkinsFileMirror() {
+    }
+
+    /**
+     * Returns the controller wide mirror
+     * @return {@link RemoteJenkinsFileMirror}
+     */
+    @NonNull
+    public static RemoteJenkinsFileMirror get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Directory of the mirror for the given remote URL and credentials
+     * @param remoteUrl      Remote URL
+     * @param credentialsKey Key of the credentials the mirror is fetched with, empty for anonymous access
+     * @return {@link File} of the mirror, may not exist yet
+     */
+    @NonNull
+    public File getDirectory(@NonNull String remoteUrl, @NonNull String credentialsKey) {
+        String name = credentialsKey.isEmpty() ? remoteUrl : remoteUrl + " " + credentialsKey;
+        return new File(new File(RemoteGitSupport.getCacheRoot(), "mirrors"), Util.getDigestOf(name));
+    }
+
+    /**
+     * Reads the Jenkins file at the head of the given branch from the mirror. If the expected revision is already in
+     * the mirror, it is read without contacting the remote repository; otherwise the branch is fetched first.
+     *
+     * @param gitSCM     Remote Jenkins File SCM which holds the credentials
+     * @param remoteUrl  Remote URL of the Jenkins file repository
+     * @param branch     Branch name
+     * @param revision   Expected head of the branch, e.g. from {@link RemoteRefTable}, may be null
+     * @param scriptPath Path of the Jenkins file
+     * @param context    Item used for credentials lookup
+     * @param listener   {@link TaskListener}
+     * @return {@link ResolvedJenkinsFile}
+     * @throws IOException if the branch or the Jenkins file can not be found
+     * @throws InterruptedException
+     */
+    @NonNull
+    public ResolvedJenkinsFile read(@NonNull GitSCM gitSCM, @NonNull String remoteUrl, @NonNull String branch, @CheckForNull String revision,
+                                    @NonNull String scriptPath, @CheckForNull Item context, @NonNull TaskListener listener) throws IOException, InterruptedException {
+        String credentialsKey = RemoteGitSupport.getCredentialsKey(gitSCM, context);
+        // Concurrent builds which need the same Jenkins file with the same credentials share a single fetch and read
+        try {
+            return this.reads.execute(Arrays.asList(remoteUrl, credentialsKey, branch, String.valueOf(revision), scriptPath),
+                    () -> this.fetchAndRead(gitSCM, remoteUrl, credentialsKey, branch, revision, scriptPath, context, listener));
+        } catch (IOException | InterruptedException | RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Number of mirror reads which were run
+     * @return reads
+     */
+    public long getReads() {
+        return this.reads.getExecutions();
+    }
+
+    /**
+     * Number of mirror reads which were saved by sharing the result of a concurrent read
+     * @return coalesced reads
+     */
+    public long getCoalescedReads() {
+        return this.reads.getCoalesced();
+    }
+
+    private ResolvedJenkinsFile fetchAndRead(GitSCM gitSCM, String remoteUrl, String credentialsKey, String branch, String revision,
+                                             String scriptPath, Item context, TaskListener listener) throws IOException, InterruptedException {
+        File directory = this.getDirectory(remoteUrl, credentialsKey);
+        ReentrantLock lock = this.locks.computeIfAbsent(directory.getName(), name -> new ReentrantLock());
+        lock.lockInterruptibly();
+        try {
+            FilePath directoryPath = new FilePath(directory);
+            directoryPath.mkdirs();
+            GitClient client = RemoteGitSupport.createClient(gitSCM, context, listener, directoryPath);
+            if (!client.hasGitRepo(false)) {
+                listener.getLogger().println("Creating mirror of " + remoteUrl + " in " + directory);
+                client.init();
+            }
+            ObjectId commitId = revision == null ? null : ObjectId.fromString(revision);
+            if (commitId == null || !hasCommit(client, commitId)) {
+                listener.getLogger().println("Fetching " + branch + " from " + remoteUrl + " into mirror");
+                try {
+                    client.fetch_()
+                            .from(new URIish(remoteUrl), Collections.singletonList(new RefSpec("+" + Constants.R_HEADS + branch + ":" + REMOTE_REFS + branch)))
+                            .execute();
+                } catch (GitException ex) {
+                    throw new AbortException("Unable to fetch " + branch + " from " + remoteUrl + ": " + ex.getMessage());
+                } catch (URISyntaxException ex) {
+                    throw new AbortException("Invalid remote URL " + remoteUrl);
+                }
+                commitId = client.revParse(REMOTE_REFS + branch);
+            }
+            String script = readFile(client, commitId, scriptPath);
+            return new ResolvedJenkinsFile(remoteUrl, credentialsKey, commitId.name(), scriptPath, script);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static boolean hasCommit(GitClient client, ObjectId commitId) throws IOException, InterruptedException {
+        return client.withRepository((repository, channel) -> repository.getObjectDatabase().has(commitId));
+    }
+
+    private static String readFile(GitClient client, ObjectId commitId, String scriptPath) throws IOException, InterruptedException {
+        String path = scriptPath.startsWith("./") ? scriptPath.substring(2) : scriptPath;
+        return client.withRepository((repository, channel) -> {
+            try (RevWalk revWalk = new RevWalk(repository)) {
+                RevCommit commit = revWalk.parseCommit(commitId);
+                try (TreeWalk treeWalk = TreeWalk.forPath(repository, path, commit.getTree())) {
+                    if (treeWalk == null) {
+                        throw new FileNotFoundException(path);
+                    }
+                    ObjectLoader loader = repository.open(treeWalk.getObjectId(0), Constants.OBJ_BLOB);
+                    return new String(loader.getBytes(), StandardCharsets.UTF_8);
+                }
+            }
+        });
+    }
+}
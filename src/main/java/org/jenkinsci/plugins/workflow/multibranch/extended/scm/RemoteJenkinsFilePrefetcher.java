@@ -0,0 +1,309 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.TaskListener;
+import hudson.plugins.git.GitSCM;
+import hudson.scm.SCM;
+import hudson.security.ACL;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.LogTaskListener;
+import hudson.util.NamingThreadFactory;
+import jenkins.security.ImpersonatingExecutorService;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Resolves the remote Jenkins file of indexed branches in the background and warms {@link JenkinsfileCache}, so that
+ * the first build after indexing does not have to wait for the remote repository. Runs which wait in the queue have
+ * their Jenkins file resolved while waiting, the result is handed to the run when it starts, see {@link #prefetchForRun}.
+ */
+public final class RemoteJenkinsFilePrefetcher {
+
+    private static final Logger LOGGER = Logger.getLogger(RemoteJenkinsFilePrefetcher.class.getName());
+    private static final int THREADS = SystemProperties.getInteger(RemoteJenkinsFilePrefetcher.class.getName() + ".threads", 2);
+    private static final int QUEUE_SIZE = SystemProperties.getInteger(RemoteJenkinsFilePrefetcher.class.getName() + ".queueSize", 1000);
+    private static final int RUN_THREADS = SystemProperties.getInteger(RemoteJenkinsFilePrefetcher.class.getName() + ".runThreads", 2);
+    private static final int RUN_QUEUE_SIZE = SystemProperties.getInteger(RemoteJenkinsFilePrefetcher.class.getName() + ".runQueueSize", 100);
+    private static final long HAND_OFF_TIMEOUT_SECONDS = SystemProperties.getLong(RemoteJenkinsFilePrefetcher.class.getName() + ".handOffTimeoutSeconds", 60L);
+    private static final RemoteJenkinsFilePrefetcher INSTANCE = new RemoteJenkinsFilePrefetcher();
+
+    private final ExecutorService executorService = new ImpersonatingExecutorService(
+            new ThreadPoolExecutor(THREADS, THREADS, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(QUEUE_SIZE),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "RemoteJenkinsFilePrefetcher")),
+            ACL.SYSTEM2);
+    // Runs waiting in the queue must not wait behind indexing prefetches, they get their own threads
+    private final ExecutorService runExecutorService = new ImpersonatingExecutorService(
+            new ThreadPoolExecutor(RUN_THREADS, RUN_THREADS, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(RUN_QUEUE_SIZE),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "RemoteJenkinsFilePrefetcher run hand-off")),
+            ACL.SYSTEM2);
+    // Full name of the job to the resolution for its next run, which is waiting in the queue
+    private final Map<String, PendingResolution> resolutions = new ConcurrentHashMap<>();
+
+    private RemoteJenkinsFilePrefetcher() {
+    }
+
+    /**
+     * Returns the controller wide prefetcher
+     * @return {@link RemoteJenkinsFilePrefetcher}
+     */
+    @NonNull
+    public static RemoteJenkinsFilePrefetcher get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Schedules the prefetch of the remote Jenkins file for a branch. Prefetch is best effort, it is skipped when the
+     * SCM is not supported, the script path is parameterized or too many prefetches are waiting.
+     *
+     * @param remoteJenkinsFileSCM Remote Jenkins File SCM
+     * @param remoteJenkinsFile    Path of the Jenkins file
+     * @param branchName           Name of the indexed branch
+     * @param matchBranches        True if Match Branches option is enabled
+     * @param fallbackBranch       Fallback branch for Match Branches option
+     * @param context              Item used for credentials lookup
+     */
+    public void prefetch(@CheckForNull SCM remoteJenkinsFileSCM, @CheckForNull String remoteJenkinsFile, @NonNull String branchName,
+                         boolean matchBranches, @CheckForNull String fallbackBranch, @CheckForNull Item context) {
+        if (!(remoteJenkinsFileSCM instanceof GitSCM) || remoteJenkinsFile == null || remoteJenkinsFile.contains("$")) {
+            return;
+        }
+        GitSCM gitSCM = (GitSCM) remoteJenkinsFileSCM;
+        String remoteUrl = RemoteGitSupport.getSingleRemoteUrl(gitSCM);
+        if (remoteUrl == null) {
+            return;
+        }
+        try {
+            this.executorService.execute(() -> {
+                try {
+                    Resolution resolution = this.resolve(gitSCM, remoteUrl, remoteJenkinsFile, branchName, matchBranches, fallbackBranch, context);
+                    if (resolution != null) {
+                        LOGGER.log(Level.FINE, "Prefetched {0}", resolution.resolvedJenkinsFile.getKey());
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception ex) {
+                    // The build resolves the Jenkins file again and reports the failure
+                    LOGGER.log(Level.FINE, "Prefetch of " + remoteJenkinsFile + " for " + branchName + " failed", ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            LOGGER.log(Level.FINE, "Skipping prefetch of {0} for {1}, queue is full", new Object[]{remoteJenkinsFile, branchName});
+        }
+    }
+
+    /**
+     * Starts resolving the remote Jenkins file for the next run of a branch job as soon as the run enters the queue, so
+     * that fetching overlaps the time the run waits for an executor. The run takes the result with {@link #take} when
+     * it starts. Only one resolution is kept per job, runs which enter the queue while it is running share it.
+     * Resolutions run on their own threads, so that they do not wait behind the prefetches of branch indexing.
+     *
+     * @param remoteJenkinsFileSCM Remote Jenkins File SCM
+     * @param remoteJenkinsFile    Path of the Jenkins file
+     * @param branchName           Name of the branch of the job
+     * @param matchBranches        True if Match Branches option is enabled
+     * @param fallbackBranch       Fallback branch for Match Branches option
+     * @param job                  Branch job of the queued run, also used for credentials lookup
+     */
+    public void prefetchForRun(@CheckForNull SCM remoteJenkinsFileSCM, @CheckForNull String remoteJenkinsFile, @NonNull String branchName,
+                               boolean matchBranches, @CheckForNull String fallbackBranch, @NonNull Job<?, ?> job) {
+        if (!(remoteJenkinsFileSCM instanceof GitSCM) || remoteJenkinsFile == null || remoteJenkinsFile.contains("$")) {
+            return;
+        }
+        GitSCM gitSCM = (GitSCM) remoteJenkinsFileSCM;
+        String remoteUrl = RemoteGitSupport.getSingleRemoteUrl(gitSCM);
+        if (remoteUrl == null) {
+            return;
+        }
+        String owner = job.getFullName();
+        PendingResolution pending = new PendingResolution();
+        CompletableFuture<Resolution> future = pending.future;
+        // A resolution which is still running is shared, a finished one may be outdated and is replaced
+        if (this.resolutions.merge(owner, pending, (previous, next) -> previous.future.isDone() ? next : previous) != pending) {
+            return;
+        }
+        try {
+            this.runExecutorService.execute(() -> {
+                if (!pending.claim()) {
+                    // Run started or was cancelled before the resolution did, it resolves the Jenkins file itself
+                    return;
+                }
+                try {
+                    future.complete(this.resolve(gitSCM, remoteUrl, remoteJenkinsFile, branchName, matchBranches, fallbackBranch, job));
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    future.complete(null);
+                } catch (Exception ex) {
+                    // The run resolves the Jenkins file itself and reports the failure
+                    LOGGER.log(Level.FINE, "Resolution of " + remoteJenkinsFile + " for queued run of " + owner + " failed", ex);
+                    future.complete(null);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            this.resolutions.remove(owner, pending);
+            LOGGER.log(Level.FINE, "Skipping resolution of {0} for queued run of {1}, queue is full", new Object[]{remoteJenkinsFile, owner});
+        }
+    }
+
+    /**
+     * Takes the Jenkins file which was resolved while the run of the job was waiting in the queue, waiting for the
+     * resolution to finish if it is already running. A resolution which did not start yet is cancelled, the run
+     * resolves the Jenkins file itself right away instead of waiting for a free thread. The result is only returned if it was resolved for the same
+     * repository, branch and path as the run asks for.
+     *
+     * @param owner      Full name of the job
+     * @param remoteUrl  Remote URL of the Jenkins file repository
+     * @param branch     Branch the run reads the Jenkins file from
+     * @param scriptPath Expanded path of the Jenkins file
+     * @return {@link ResolvedJenkinsFile} or null if nothing usable was resolved for the job
+     * @throws InterruptedException
+     */
+    @CheckForNull
+    public ResolvedJenkinsFile take(@NonNull String owner, @NonNull String remoteUrl, @NonNull String branch, @NonNull String scriptPath) throws InterruptedException {
+        PendingResolution pending = this.resolutions.remove(owner);
+        if (pending == null || pending.cancel()) {
+            return null;
+        }
+        Resolution resolution;
+        try {
+            resolution = pending.future.get(HAND_OFF_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException | CancellationException | TimeoutException ex) {
+            return null;
+        }
+        if (resolution == null || !branch.equals(resolution.branch)) {
+            return null;
+        }
+        ResolvedJenkinsFile resolvedJenkinsFile = resolution.resolvedJenkinsFile;
+        if (!remoteUrl.equals(resolvedJenkinsFile.getRemoteUrl()) || !scriptPath.equals(resolvedJenkinsFile.getScriptPath())) {
+            return null;
+        }
+        return resolvedJenkinsFile;
+    }
+
+    /**
+     * Drops the resolution of a job, for example when its queued run was cancelled
+     * @param owner Full name of the job
+     */
+    public void discard(@NonNull String owner) {
+        PendingResolution pending = this.resolutions.remove(owner);
+        if (pending != null) {
+            pending.cancel();
+        }
+    }
+
+    /**
+     * Drops the resolution of a job if its run does not take it within the hand-off timeout, for example when the run
+     * left the queue but failed before it read the Jenkins file. A resolution which was replaced in the meantime is kept.
+     * @param owner Full name of the job
+     */
+    public void expire(@NonNull String owner) {
+        this.expire(owner, HAND_OFF_TIMEOUT_SECONDS);
+    }
+
+    void expire(@NonNull String owner, long delaySeconds) {
+        PendingResolution pending = this.resolutions.get(owner);
+        if (pending == null) {
+            return;
+        }
+        Timer.get().schedule(() -> {
+            if (this.resolutions.remove(owner, pending)) {
+                pending.cancel();
+            }
+        }, delaySeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Resolution which is kept for the next run of a job
+     * @param owner Full name of the job
+     * @return Future of the resolution or null if there is none
+     */
+    @CheckForNull
+    CompletableFuture<?> getResolution(@NonNull String owner) {
+        PendingResolution pending = this.resolutions.get(owner);
+        return pending == null ? null : pending.future;
+    }
+
+    @CheckForNull
+    private Resolution resolve(GitSCM gitSCM, String remoteUrl, String remoteJenkinsFile, String branchName,
+                               boolean matchBranches, String fallbackBranch, Item context) throws Exception {
+        TaskListener listener = new LogTaskListener(LOGGER, Level.FINE);
+        String branch;
+        if (matchBranches) {
+            branch = branchName;
+            if (MissingBranchCache.get().isMissing(remoteUrl, branchName)) {
+                branch = fallbackBranch;
+            }
+        } else {
+            branch = RemoteGitSupport.getSingleBranchName(gitSCM);
+        }
+        if (branch == null) {
+            return null;
+        }
+        Map<String, String> heads = RemoteRefTable.get().getHeads(gitSCM, remoteUrl, context, listener);
+        if (matchBranches && !heads.containsKey(branch)) {
+            MissingBranchCache.get().markMissing(remoteUrl, branch);
+            branch = fallbackBranch;
+        }
+        String revision = branch == null ? null : heads.get(branch);
+        if (revision == null) {
+            return null;
+        }
+        String credentialsKey = RemoteGitSupport.getCredentialsKey(gitSCM, context);
+        String script = JenkinsfileCache.get().get(new JenkinsfileCache.Key(remoteUrl, credentialsKey, revision, remoteJenkinsFile));
+        if (script != null) {
+            return new Resolution(branch, new ResolvedJenkinsFile(remoteUrl, credentialsKey, revision, remoteJenkinsFile, script));
+        }
+        ResolvedJenkinsFile resolvedJenkinsFile = RemoteJenkinsFileMirror.get().read(gitSCM, remoteUrl, branch, revision, remoteJenkinsFile, context, listener);
+        JenkinsfileCache.get().put(resolvedJenkinsFile.getKey(), resolvedJenkinsFile.getScript());
+        return new Resolution(branch, resolvedJenkinsFile);
+    }
+
+    /**
+     * Resolution for a queued run, which is either started by a thread of the executor or cancelled by the run,
+     * whichever comes first.
+     */
+    private static final class PendingResolution {
+
+        private final CompletableFuture<Resolution> future = new CompletableFuture<>();
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        private boolean claim() {
+            return this.claimed.compareAndSet(false, true);
+        }
+
+        private boolean cancel() {
+            return this.claim() && this.future.cancel(false);
+        }
+    }
+
+    /**
+     * Jenkins file resolved in the background together with the branch it was read from.
+     */
+    private static final class Resolution {
+
+        private final String branch;
+        private final ResolvedJenkinsFile resolvedJenkinsFile;
+
+        private Resolution(String branch, ResolvedJenkinsFile resolvedJenkinsFile) {
+            this.branch = branch;
+            this.resolvedJenkinsFile = resolvedJenkinsFile;
+        }
+    }
+}
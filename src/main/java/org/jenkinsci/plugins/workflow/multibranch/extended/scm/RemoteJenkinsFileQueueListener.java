@@ -0,0 +1,40 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
+
+import hudson.Extension;
+import hudson.model.Queue;
+import hudson.model.queue.QueueListener;
+import org.jenkinsci.plugins.workflow.flow.FlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+
+/**
+ * Starts resolving the remote Jenkins file as soon as a run of a branch job enters the queue, so that fetching the
+ * Jenkins file overlaps the time the run waits for an executor. Resolutions of runs which leave the queue without
+ * taking them are dropped.
+ */
+@Extension
+public class RemoteJenkinsFileQueueListener extends QueueListener {
+
+    @Override
+    public void onEnterWaiting(Queue.WaitingItem wi) {
+        if (wi.task instanceof WorkflowJob) {
+            WorkflowJob job = (WorkflowJob) wi.task;
+            FlowDefinition definition = job.getDefinition();
+            if (definition instanceof ExtendedSCMBinder) {
+                ((ExtendedSCMBinder) definition).prefetchForRun(job);
+            }
+        }
+    }
+
+    @Override
+    public void onLeft(Queue.LeftItem li) {
+        if (li.task instanceof WorkflowJob) {
+            String owner = ((WorkflowJob) li.task).getFullName();
+            if (li.isCancelled()) {
+                RemoteJenkinsFilePrefetcher.get().discard(owner);
+            } else {
+                // Started run takes the resolution right away, one which is never taken must not be kept forever
+                RemoteJenkinsFilePrefetcher.get().expire(owner);
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import jenkins.plugins.git.GitSCMSource;
+import jenkins.scm.api.SCMEvent;
+import jenkins.scm.api.SCMEventListener;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMHeadEvent;
+import org.apache.commons.lang.StringUtils;
+import org.jenkinsci.plugins.workflow.multibranch.extended.RemoteJenkinsFileWorkflowBranchProjectFactory;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class listens push events and invalidates the cached state of the remote Jenkins File repositories they match.
+ * Remote repositories are taken from {@link RemoteJenkinsFileUrlIndex}, which holds the Plugin SCM definition of every
+ * {@link RemoteJenkinsFileWorkflowBranchProjectFactory}, and from the caches.
+ * <p>
+ * Events of the Git plugin ({@code notifyCommit}) carry the remote URL and match exactly. Webhook events of hosting
+ * services only carry the name of the repository, which is compared with the path of the remote URL: a match on the
+ * full path (e.g. {@code owner/repo}) is exact, a match on the last segment only is not, since repositories of other
+ * owners may have the same name. Any match invalidates the repository, only exact matches make the caches keep its
+ * state for the longer event TTL. Only the pushed branches are invalidated; Jenkins file contents are cached per
+ * commit and never become stale.
+ */
+@Extension
+public class RemoteJenkinsFileSCMEventListener extends SCMEventListener {
+
+    private static final Logger LOGGER = Logger.getLogger(RemoteJenkinsFileSCMEventListener.class.getName());
+
+    enum Match {
+        NONE, NAME, EXACT
+    }
+
+    @Override
+    public void onSCMHeadEvent(SCMHeadEvent<?> event) {
+        handle(event, getRemoteUrls(), RemoteRefTable.get(), MissingBranchCache.get());
+    }
+
+    static void handle(@NonNull SCMHeadEvent<?> event, @NonNull Set<String> remoteUrls, @NonNull RemoteRefTable refTable, @NonNull MissingBranchCache missingBranches) {
+        for (String remoteUrl : remoteUrls) {
+            GitSCMSource gitSCMSource = new GitSCMSource(remoteUrl);
+            Match match = match(event, gitSCMSource, remoteUrl);
+            if (match == Match.NONE) {
+                continue;
+            }
+            if (match == Match.EXACT) {
+                // Push events are delivered for this repository, keep its state for the longer event TTL
+                refTable.onEvent(remoteUrl);
+                missingBranches.onEvent(remoteUrl);
+            } else {
+                refTable.invalidate(remoteUrl);
+            }
+            if (event.getType() == SCMEvent.Type.REMOVED) {
+                continue;
+            }
+            Set<SCMHead> heads;
+            try {
+                heads = event.heads(gitSCMSource).keySet();
+            } catch (RuntimeException ex) {
+                // Event could not tell the branches, forget everything about the repository
+                LOGGER.log(Level.FINE, "Unable to get branches of " + remoteUrl + " from event", ex);
+                heads = Collections.emptySet();
+            }
+            if (heads.isEmpty()) {
+                missingBranches.invalidate(remoteUrl);
+            }
+            for (SCMHead head : heads) {
+                missingBranches.invalidate(remoteUrl, head.getName());
+            }
+            LOGGER.log(Level.FINE, "Invalidated {0} of {1} after {2} event", new Object[]{heads, remoteUrl, event.getType()});
+        }
+    }
+
+    /**
+     * Checks if the event is about the remote repository
+     * @param event        SCM event
+     * @param gitSCMSource Git source of the remote repository
+     * @param remoteUrl    Remote URL
+     * @return How the event matches the remote repository
+     */
+    @NonNull
+    static Match match(@NonNull SCMHeadEvent<?> event, @NonNull GitSCMSource gitSCMSource, @NonNull String remoteUrl) {
+        try {
+            if (event.isMatch(gitSCMSource)) {
+                return Match.EXACT;
+            }
+        } catch (RuntimeException ex) {
+            LOGGER.log(Level.FINE, "Unable to match event with " + remoteUrl, ex);
+        }
+        String sourceName = StringUtils.strip(event.getSourceName(), "/");
+        String repositoryPath = getRepositoryPath(remoteUrl);
+        if (StringUtils.isEmpty(sourceName) || repositoryPath == null) {
+            return Match.NONE;
+        }
+        if (sourceName.contains("/") && (repositoryPath.equalsIgnoreCase(sourceName) || StringUtils.endsWithIgnoreCase(repositoryPath, "/" + sourceName))) {
+            return Match.EXACT;
+        }
+        if (StringUtils.substringAfterLast("/" + repositoryPath, "/").equalsIgnoreCase(sourceName)) {
+            return Match.NAME;
+        }
+        return Match.NONE;
+    }
+
+    /**
+     * Path of the repository in a remote URL, without host, user and {@code .git} suffix
+     * @param remoteUrl Remote URL, e.g. {@code https://host/owner/repo.git} or {@code git@host:owner/repo.git}
+     * @return Path, e.g. {@code owner/repo}, or null if the URL has no path
+     */
+    @CheckForNull
+    static String getRepositoryPath(@NonNull String remoteUrl) {
+        String path = remoteUrl.trim();
+        if (path.contains("://")) {
+            path = StringUtils.substringAfter(StringUtils.substringAfter(path, "://"), "/");
+        } else if (path.contains(":")) {
+            // scp like syntax
+            path = StringUtils.substringAfter(path, ":");
+        }
+        path = StringUtils.removeEnd(StringUtils.strip(path, "/"), ".git");
+        return path.isEmpty() ? null : path;
+    }
+
+    /**
+     * Remote URLs of all remote Jenkins File repositories which are configured or cached
+     * @return Set of remote URLs
+     */
+    static Set<String> getRemoteUrls() {
+        Set<String> remoteUrls = new TreeSet<>(RemoteJenkinsFileUrlIndex.get().getRemoteUrls());
+        remoteUrls.addAll(MissingBranchCache.get().getRemoteUrls());
+        remoteUrls.addAll(RemoteRefTable.get().getRemoteUrls());
+        return remoteUrls;
+    }
+}
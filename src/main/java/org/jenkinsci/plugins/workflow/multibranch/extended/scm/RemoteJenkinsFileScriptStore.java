@@ -0,0 +1,509 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.XmlFile;
+import hudson.init.Terminator;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Item;
+import hudson.model.TaskListener;
+import hudson.model.listeners.ItemListener;
+import hudson.util.XStream2;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Controller wide store of remote Jenkins File checkouts, one read-only checkout per remote URL, credentials and commit.
+ * Branch jobs which resolve to the same commit with the same credentials read their Jenkins file from the same checkout
+ * instead of keeping their own copy in {@code @script}, see {@link RemoteGitSupport#getCredentialsKey}. Every job
+ * references the checkout it used last; checkouts which are no longer referenced by any job are deleted.
+ * New commits are fetched into a workspace which is kept per remote URL and credentials, so that only the objects which
+ * are missing are fetched, and the files of the commit are copied from there into the store.
+ * The lock only guards the references and the checkouts which are being read. Unreferenced checkouts are renamed out of
+ * the way while it is held and deleted after it is released, the references are saved shortly after they change.
+ */
+public final class RemoteJenkinsFileScriptStore {
+
+    private static final Logger LOGGER = Logger.getLogger(RemoteJenkinsFileScriptStore.class.getName());
+    private static final boolean DISABLED = SystemProperties.getBoolean(RemoteJenkinsFileScriptStore.class.getName() + ".disabled");
+    private static final String CHECKOUT_PREFIX = ".checkout-";
+    private static final String DELETED_PREFIX = ".deleted-";
+    private static final String WORKSPACE = ".workspace";
+    private static final long SAVE_DELAY_SECONDS = 10;
+    private static final long CHECKOUT_GRACE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final XStream2 XSTREAM = new XStream2();
+    private static RemoteJenkinsFileScriptStore instance;
+
+    private final File root;
+    private final XmlFile file;
+    // Full name of the job to the checkout it references, e.g. 0123abcd/0123456789abcdef0123456789abcdef01234567
+    private final Map<String, String> references = new HashMap<>();
+    // Checkout to the number of reads in progress, such checkouts are not deleted even if they lose their last reference
+    private final Map<String, Integer> readers = new HashMap<>();
+    private final AtomicBoolean savePending = new AtomicBoolean();
+
+    RemoteJenkinsFileScriptStore(@NonNull File root) {
+        this.root = root;
+        this.file = new XmlFile(XSTREAM, new File(root, "references.xml"));
+    }
+
+    /**
+     * Returns the store of the running controller, loading its references on first use
+     * @return {@link RemoteJenkinsFileScriptStore}
+     */
+    @NonNull
+    public static synchronized RemoteJenkinsFileScriptStore get() {
+        File root = new File(RemoteGitSupport.getCacheRoot(), "scripts");
+        if (instance == null || !instance.root.equals(root)) {
+            instance = new RemoteJenkinsFileScriptStore(root);
+            instance.load();
+        }
+        return instance;
+    }
+
+    /**
+     * Whether the store is used, set the disabled system property to keep a checkout per job
+     * @return true if enabled
+     */
+    public boolean isEnabled() {
+        return !DISABLED;
+    }
+
+    /**
+     * Reads the Jenkins file from the stored checkout of the given commit and makes the job reference that checkout.
+     * @param remoteUrl      Remote URL of the Jenkins file repository
+     * @param credentialsKey Key of the credentials the job uses, empty for anonymous access
+     * @param revision       Commit hash
+     * @param scriptPath     Expanded path of the Jenkins file
+     * @param owner          Full name of the job
+     * @return Script content or null if the commit is not stored
+     * @throws FileNotFoundException if the commit is stored but has no such Jenkins file
+     * @throws IOException
+     */
+    @CheckForNull
+    public String read(@NonNull String remoteUrl, @NonNull String credentialsKey, @NonNull String revision,
+                       @NonNull String scriptPath, @NonNull String owner) throws IOException {
+        if (!ObjectId.isId(revision)) {
+            return null;
+        }
+        String repository = repositoryOf(remoteUrl, credentialsKey);
+        String entry = entryOf(repository, revision);
+        File checkout = this.getDirectory(repository, revision);
+        File deleted;
+        synchronized (this) {
+            if (!checkout.isDirectory()) {
+                return null;
+            }
+            // The reference of the owner may be moved by a concurrent build, the pin keeps the checkout while it is read
+            this.readers.merge(entry, 1, Integer::sum);
+            deleted = this.reference(owner, entry);
+        }
+        this.delete(deleted);
+        try {
+            File script = new File(checkout, scriptPath);
+            if (!script.getCanonicalPath().startsWith(checkout.getCanonicalPath() + File.separator)) {
+                throw new IOException(scriptPath + " references a file that is not inside " + checkout);
+            }
+            if (!script.isFile()) {
+                throw new FileNotFoundException(scriptPath);
+            }
+            return new String(Files.readAllBytes(script.toPath()), StandardCharsets.UTF_8);
+        } finally {
+            synchronized (this) {
+                this.readers.computeIfPresent(entry, (key, count) -> count > 1 ? count - 1 : null);
+                deleted = this.removeIfUnreferenced(entry);
+            }
+            this.delete(deleted);
+        }
+    }
+
+    /**
+     * Returns the workspace of the given remote repository, which new commits are checked out into before their files
+     * are added to the store by {@link #addCopy}. The workspace is kept, so that later checkouts only fetch the objects
+     * which are missing. Callers hold a {@link hudson.slaves.WorkspaceList} lease on it while they use it.
+     * @param remoteUrl      Remote URL of the Jenkins file repository
+     * @param credentialsKey Key of the credentials the job uses, empty for anonymous access
+     * @return Directory of the workspace
+     * @throws IOException
+     */
+    @NonNull
+    public File getWorkspace(@NonNull String remoteUrl, @NonNull String credentialsKey) throws IOException {
+        File workspace = new File(new File(this.root, repositoryOf(remoteUrl, credentialsKey)), WORKSPACE);
+        Files.createDirectories(workspace.toPath());
+        // Workspaces of repositories which are not referenced anymore are deleted once they were not used for a while
+        if (!workspace.setLastModified(System.currentTimeMillis())) {
+            LOGGER.log(Level.FINE, "Unable to touch {0}", workspace);
+        }
+        return workspace;
+    }
+
+    /**
+     * Copies the files of a checkout in the workspace, without the Git directory, into the store and makes the job
+     * reference them. Nothing is copied if the commit is already stored.
+     * @param remoteUrl      Remote URL of the Jenkins file repository
+     * @param credentialsKey Key of the credentials the checkout was made with, empty for anonymous access
+     * @param revision       Commit hash which was checked out
+     * @param workspace      Directory from {@link #getWorkspace}
+     * @param owner          Full name of the job
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void addCopy(@NonNull String remoteUrl, @NonNull String credentialsKey, @NonNull String revision,
+                        @NonNull File workspace, @NonNull String owner) throws IOException, InterruptedException {
+        if (!ObjectId.isId(revision)) {
+            return;
+        }
+        String repository = repositoryOf(remoteUrl, credentialsKey);
+        boolean stored;
+        File deleted = null;
+        synchronized (this) {
+            stored = this.getDirectory(repository, revision).isDirectory();
+            if (stored) {
+                deleted = this.reference(owner, entryOf(repository, revision));
+            }
+        }
+        if (stored) {
+            this.delete(deleted);
+            return;
+        }
+        File checkout = this.newCheckoutDirectory(remoteUrl, credentialsKey);
+        try {
+            new FilePath(workspace).copyRecursiveTo("**/*", ".git/**", new FilePath(checkout));
+        } catch (IOException | InterruptedException ex) {
+            Util.deleteRecursive(checkout);
+            throw ex;
+        }
+        this.add(remoteUrl, credentialsKey, revision, checkout, owner);
+    }
+
+    /**
+     * Creates an empty directory for a new checkout, which is added to the store by {@link #add} once its commit is known
+     * @param remoteUrl      Remote URL of the Jenkins file repository
+     * @param credentialsKey Key of the credentials the job uses, empty for anonymous access
+     * @return Directory for the checkout
+     * @throws IOException
+     */
+    @NonNull
+    public File newCheckoutDirectory(@NonNull String remoteUrl, @NonNull String credentialsKey) throws IOException {
+        File checkout = new File(new File(this.root, repositoryOf(remoteUrl, credentialsKey)), CHECKOUT_PREFIX + UUID.randomUUID());
+        Files.createDirectories(checkout.toPath());
+        return checkout;
+    }
+
+    /**
+     * Adds a finished checkout to the store and makes the job reference it. If the commit is already stored, for example
+     * by a concurrent build of another job, the new checkout is deleted and the stored one is used.
+     * @param remoteUrl      Remote URL of the Jenkins file repository
+     * @param credentialsKey Key of the credentials the checkout was made with, empty for anonymous access
+     * @param revision       Commit hash which was checked out
+     * @param checkout       Directory from {@link #newCheckoutDirectory}
+     * @param owner          Full name of the job
+     * @throws IOException
+     */
+    public void add(@NonNull String remoteUrl, @NonNull String credentialsKey, @NonNull String revision,
+                    @NonNull File checkout, @NonNull String owner) throws IOException {
+        if (!ObjectId.isId(revision)) {
+            Util.deleteRecursive(checkout);
+            return;
+        }
+        String repository = repositoryOf(remoteUrl, credentialsKey);
+        File target = this.getDirectory(repository, revision);
+        boolean duplicate;
+        File deleted;
+        synchronized (this) {
+            duplicate = target.isDirectory();
+            if (!duplicate) {
+                Files.move(checkout.toPath(), target.toPath());
+            }
+            deleted = this.reference(owner, entryOf(repository, revision));
+        }
+        if (duplicate) {
+            Util.deleteRecursive(checkout);
+        }
+        this.delete(deleted);
+    }
+
+    /**
+     * Drops the references of a deleted job or of all jobs in a deleted folder, and deletes the checkouts which are not
+     * referenced by any other job
+     * @param fullName Full name of the job or folder
+     */
+    public void release(@NonNull String fullName) {
+        List<File> deleted = new ArrayList<>();
+        synchronized (this) {
+            List<String> released = new ArrayList<>();
+            for (Iterator<Map.Entry<String, String>> iterator = this.references.entrySet().iterator(); iterator.hasNext(); ) {
+                Map.Entry<String, String> reference = iterator.next();
+                if (reference.getKey().equals(fullName) || reference.getKey().startsWith(fullName + '/')) {
+                    released.add(reference.getValue());
+                    iterator.remove();
+                }
+            }
+            if (released.isEmpty()) {
+                return;
+            }
+            for (String entry : released) {
+                deleted.add(this.removeIfUnreferenced(entry));
+            }
+            this.scheduleSave();
+        }
+        for (File checkout : deleted) {
+            this.delete(checkout);
+        }
+    }
+
+    /**
+     * Moves the reference of a job which was renamed or moved
+     * @param oldOwner Previous full name of the job
+     * @param newOwner New full name of the job
+     */
+    public void rename(@NonNull String oldOwner, @NonNull String newOwner) {
+        File deleted = null;
+        synchronized (this) {
+            String entry = this.references.remove(oldOwner);
+            if (entry != null) {
+                deleted = this.reference(newOwner, entry);
+            }
+        }
+        this.delete(deleted);
+    }
+
+    /**
+     * Number of jobs which reference the stored checkout of the given commit
+     * @param remoteUrl      Remote URL of the Jenkins file repository
+     * @param credentialsKey Key of the credentials the checkout was made with, empty for anonymous access
+     * @param revision       Commit hash
+     * @return reference count
+     */
+    public synchronized int getReferenceCount(@NonNull String remoteUrl, @NonNull String credentialsKey, @NonNull String revision) {
+        String entry = entryOf(repositoryOf(remoteUrl, credentialsKey), revision);
+        int count = 0;
+        for (String value : this.references.values()) {
+            if (value.equals(entry)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Drops references of jobs which do not exist anymore and deletes every checkout without a reference, including
+     * checkouts which were left behind by interrupted builds.
+     */
+    public void clean() {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins != null) {
+            synchronized (this) {
+                this.references.keySet().removeIf(owner -> jenkins.getItemByFullName(owner) == null);
+            }
+        }
+        this.save();
+        File[] repositories = this.root.listFiles(File::isDirectory);
+        if (repositories == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (File repository : repositories) {
+            if (repository.getName().startsWith(DELETED_PREFIX)) {
+                // Left behind by a deletion which did not finish
+                this.delete(repository);
+                continue;
+            }
+            File[] checkouts = repository.listFiles(File::isDirectory);
+            if (checkouts == null) {
+                continue;
+            }
+            for (File checkout : checkouts) {
+                String entry = repository.getName() + '/' + checkout.getName();
+                boolean pending = (checkout.getName().startsWith(CHECKOUT_PREFIX) || checkout.getName().equals(WORKSPACE))
+                        && now - checkout.lastModified() < CHECKOUT_GRACE_MILLIS;
+                if (checkout.getName().equals(WORKSPACE)) {
+                    // Workspace is kept as long as a job references a commit of the repository or it was used recently
+                    if (!pending && !this.isReferenced(repository.getName())) {
+                        this.delete(checkout);
+                    }
+                } else if (!pending) {
+                    File deleted;
+                    synchronized (this) {
+                        deleted = this.removeIfUnreferenced(entry);
+                    }
+                    this.delete(deleted);
+                }
+            }
+        }
+    }
+
+    private synchronized boolean isReferenced(String repository) {
+        return this.references.values().stream().anyMatch(entry -> entry.startsWith(repository + '/'));
+    }
+
+    /**
+     * Makes the owner reference the entry, the caller holds the lock
+     * @return Checkout which is not referenced anymore, to be deleted after the lock is released
+     */
+    @CheckForNull
+    private File reference(String owner, String entry) {
+        String previous = this.references.put(owner, entry);
+        if (entry.equals(previous)) {
+            return null;
+        }
+        this.scheduleSave();
+        return previous == null ? null : this.removeIfUnreferenced(previous);
+    }
+
+    /**
+     * Moves the checkout of an entry which is not referenced out of the store, the caller holds the lock. Renaming is
+     * cheap, the checkout is deleted after the lock is released.
+     * @return Renamed checkout or null if the entry is referenced, is being read or has no checkout
+     */
+    @CheckForNull
+    private File removeIfUnreferenced(String entry) {
+        File checkout = new File(this.root, entry);
+        if (this.references.containsValue(entry) || this.readers.containsKey(entry) || !checkout.exists()) {
+            return null;
+        }
+        File deleted = new File(this.root, DELETED_PREFIX + UUID.randomUUID());
+        try {
+            Files.move(checkout.toPath(), deleted.toPath());
+            return deleted;
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Unable to remove " + checkout, ex);
+            return null;
+        }
+    }
+
+    private void delete(@CheckForNull File checkout) {
+        if (checkout == null) {
+            return;
+        }
+        try {
+            Util.deleteRecursive(checkout);
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Unable to delete " + checkout, ex);
+        }
+    }
+
+    private static String repositoryOf(String remoteUrl, String credentialsKey) {
+        return Util.getDigestOf(credentialsKey.isEmpty() ? remoteUrl : remoteUrl + " " + credentialsKey);
+    }
+
+    private static String entryOf(String repository, String revision) {
+        return repository + '/' + revision;
+    }
+
+    private File getDirectory(String repository, String revision) {
+        return new File(this.root, entryOf(repository, revision));
+    }
+
+    synchronized void load() {
+        if (!this.file.exists()) {
+            return;
+        }
+        try {
+            Object data = this.file.read();
+            if (data instanceof Map) {
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) data).entrySet()) {
+                    if (entry.getKey() instanceof String && entry.getValue() instanceof String) {
+                        this.references.put((String) entry.getKey(), (String) entry.getValue());
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            // Checkouts without references are cleaned and checked out again on demand
+            LOGGER.log(Level.WARNING, "Unable to load " + this.file, ex);
+        }
+    }
+
+    private void scheduleSave() {
+        if (this.savePending.compareAndSet(false, true)) {
+            // Builds and deletions of many jobs change many references at once, save them together
+            Timer.get().schedule(this::save, SAVE_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    void save() {
+        this.savePending.set(false);
+        Map<String, String> data;
+        synchronized (this) {
+            data = new HashMap<>(this.references);
+        }
+        try {
+            this.file.write(data);
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Unable to save " + this.file, ex);
+        }
+    }
+
+    /**
+     * Keeps the references in line with deleted, renamed and moved jobs.
+     */
+    @Extension
+    public static class ItemListenerImpl extends ItemListener {
+
+        @Override
+        public void onDeleted(Item item) {
+            RemoteJenkinsFileScriptStore.get().release(item.getFullName());
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            RemoteJenkinsFileScriptStore.get().rename(oldFullName, newFullName);
+        }
+    }
+
+    /**
+     * Saves pending changes of the references when the controller shuts down.
+     */
+    @Terminator
+    public static void saveOnShutdown() {
+        RemoteJenkinsFileScriptStore store;
+        synchronized (RemoteJenkinsFileScriptStore.class) {
+            store = instance;
+        }
+        if (store != null && store.savePending.get()) {
+            store.save();
+        }
+    }
+
+    /**
+     * Deletes unreferenced checkouts once a day.
+     */
+    @Extension
+    public static class CleanUp extends AsyncPeriodicWork {
+
+        public CleanUp() {
+            super("Remote Jenkins File script store clean up");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return DAY;
+        }
+
+        @Override
+        protected void execute(TaskListener listener) {
+            RemoteJenkinsFileScriptStore.get().clean();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
+
+import hudson.model.Action;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class records on the run how long each phase of the remote Jenkins file resolution took. It is shown on the
+ * build page and exported through the REST API, e.g. {@code /job/x/job/y/1/api/json?tree=actions[phases[*],totalMillis]}.
+ * Phases do not overlap, their durations add up to the total apart from the time between them.
+ * The build thread records while the page or the REST API may read, all state is guarded by the lock of the action.
+ */
+@ExportedBean
+public class RemoteJenkinsFileTimingAction implements Action {
+
+    public static final String PARAMETER_LOOKUP = "Parameter lookup";
+    public static final String BRANCH_MATCHING = "Branch matching";
+    public static final String FAILED_MATCH_CHECKOUT = "Failed match checkout";
+    public static final String REF_LOOKUP = "Ref lookup";
+    public static final String QUEUE_HAND_OFF = "Queue hand-off";
+    public static final String CACHE_LOOKUP = "Cache lookup";
+    public static final String MIRROR_READ = "Mirror read";
+    public static final String LIGHTWEIGHT_READ = "Lightweight read";
+    public static final String HTTP_READ = "HTTP read";
+    public static final String STORE_READ = "Script store read";
+    public static final String CHECKOUT = "Checkout";
+    public static final String CHECKOUT_AND_SCRIPT_LOADING = "Checkout and script loading";
+    public static final String SCRIPT_LOADING = "Script loading";
+
+    public static final String CACHE_HIT = "hit";
+    public static final String CACHE_MISS = "miss";
+
+    private final List<Phase> phases = new ArrayList<>();
+    private String cacheResult;
+    private long jenkinsfileBytes;
+    private long totalMillis;
+
+    /**
+     * Records a finished phase
+     * @param name        Name of the phase
+     * @param startNanos  {@link System#nanoTime()} when the phase started
+     */
+    public synchronized void record(String name, long startNanos) {
+        this.phases.add(new Phase(name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)));
+    }
+
+    /**
+     * Replaces the phases recorded since the given count with a single phase, e.g. for an attempt which failed
+     * @param phaseCount  Number of phases before the first one to replace, see {@link #getPhaseCount()}
+     * @param name        Name of the phase
+     * @param startNanos  {@link System#nanoTime()} when the phase started
+     */
+    public synchronized void replace(int phaseCount, String name, long startNanos) {
+        this.phases.subList(Math.min(phaseCount, this.phases.size()), this.phases.size()).clear();
+        this.record(name, startNanos);
+    }
+
+    /**
+     * Number of phases recorded so far
+     * @return count
+     */
+    public synchronized int getPhaseCount() {
+        return this.phases.size();
+    }
+
+    /**
+     * Records the total time of the resolution
+     * @param startNanos {@link System#nanoTime()} when the resolution started
+     */
+    public synchronized void setTotal(long startNanos) {
+        this.totalMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    public synchronized void setCacheResult(String cacheResult) {
+        this.cacheResult = cacheResult;
+    }
+
+    /**
+     * Adds the size of a Jenkins file which was read from the remote repository
+     * @param bytes Size of the Jenkins file
+     */
+    public synchronized void addJenkinsfileBytes(long bytes) {
+        this.jenkinsfileBytes += bytes;
+    }
+
+    /**
+     * Phases in the order they finished
+     * @return List of {@link Phase}
+     */
+    @Exported(inline = true)
+    public synchronized List<Phase> getPhases() {
+        return Collections.unmodifiableList(new ArrayList<>(this.phases));
+    }
+
+    /**
+     * Result of the Jenkins file cache lookup
+     * @return {@link #CACHE_HIT}, {@link #CACHE_MISS} or null if the cache was not used
+     */
+    @Exported
+    public synchronized String getCacheResult() {
+        return cacheResult;
+    }
+
+    /**
+     * Size of the Jenkins file which was read from the remote repository, 0 if it was taken from the cache. This is the
+     * size of the Jenkins file only, not of the data a checkout or fetch transferred.
+     * @return bytes
+     */
+    @Exported
+    public synchronized long getJenkinsfileBytes() {
+        return jenkinsfileBytes;
+    }
+
+    /**
+     * Wall clock time of the whole resolution
+     * @return milliseconds
+     */
+    @Exported
+    public synchronized long getTotalMillis() {
+        return totalMillis;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Remote Jenkins File Resolution";
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+
+    /**
+     * Duration of a single resolution phase.
+     */
+    @ExportedBean(defaultVisibility = 2)
+    public static final class Phase {
+
+        private final String name;
+        private final long durationMillis;
+
+        public Phase(String name, long durationMillis) {
+            this.name = name;
+            this.durationMillis = durationMillis;
+        }
+
+        @Exported
+        public String getName() {
+            return name;
+        }
+
+        @Exported
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.plugins.git.GitSCM;
+import hudson.plugins.git.UserRemoteConfig;
+import hudson.scm.SCM;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+
+/**
+ * Remote URLs of the Remote Jenkins File SCM of every project factory in use, so that push events can be matched
+ * without walking all multibranch projects. Factories register their SCM when they are attached to a project or their
+ * SCM changes; factories which are not used anymore drop out of the index once they are garbage collected.
+ */
+public final class RemoteJenkinsFileUrlIndex {
+
+    private static final RemoteJenkinsFileUrlIndex INSTANCE = new RemoteJenkinsFileUrlIndex();
+
+    private final Map<Object, Set<String>> remoteUrls = new WeakHashMap<>();
+
+    RemoteJenkinsFileUrlIndex() {
+    }
+
+    /**
+     * Returns the controller wide index
+     * @return {@link RemoteJenkinsFileUrlIndex}
+     */
+    @NonNull
+    public static RemoteJenkinsFileUrlIndex get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Records the remote URLs of the SCM of a factory, replacing the ones it registered before
+     * @param factory Factory which owns the SCM
+     * @param scm     Remote Jenkins File SCM, null if the factory has none
+     */
+    public synchronized void register(@NonNull Object factory, @CheckForNull SCM scm) {
+        Set<String> urls = new TreeSet<>();
+        if (scm instanceof GitSCM) {
+            for (UserRemoteConfig userRemoteConfig : ((GitSCM) scm).getUserRemoteConfigs()) {
+                if (StringUtils.isNotEmpty(userRemoteConfig.getUrl())) {
+                    urls.add(userRemoteConfig.getUrl());
+                }
+            }
+        }
+        if (urls.isEmpty()) {
+            this.remoteUrls.remove(factory);
+        } else {
+            this.remoteUrls.put(factory, urls);
+        }
+    }
+
+    /**
+     * Remote URLs of all registered factories
+     * @return Set of remote URLs
+     */
+    @NonNull
+    public synchronized Set<String> getRemoteUrls() {
+        List<Set<String>> values = new ArrayList<>(this.remoteUrls.values());
+        Set<String> urls = new TreeSet<>();
+        for (Collection<String> value : values) {
+            urls.addAll(value);
+        }
+        return Collections.unmodifiableSet(urls);
+    }
+}
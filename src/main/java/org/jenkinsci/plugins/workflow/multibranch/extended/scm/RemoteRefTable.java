@@ -0,0 +1,182 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Item;
+import hudson.model.TaskListener;
+import hudson.plugins.git.GitSCM;
+import jenkins.util.SystemProperties;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Controller wide table of the branch heads of remote Jenkins File repositories.
+ * Heads are listed with a single ls-remote per repository and kept for a short time, so that branch matching and
+ * revision resolution of many builds do not have to contact the remote repository one by one.
+ * Once a push event was received for a repository, its heads are invalidated by
+ * {@link RemoteJenkinsFileSCMEventListener} and kept for a much longer time. Every invalidation bumps the generation of
+ * the repository, a listing which was started before is returned to its callers but not kept in the table.
+ * Heads are kept apart per credentials, see {@link RemoteGitSupport#getCredentialsKey}, a listing made with the
+ * credentials of one job is never returned to a job which can not use them.
+ */
+public final class RemoteRefTable {
+
+    private static final long TTL_MILLIS = TimeUnit.SECONDS.toMillis(SystemProperties.getLong(RemoteRefTable.class.getName() + ".ttlSeconds", 30L));
+    private static final long EVENT_TTL_MILLIS = TimeUnit.SECONDS.toMillis(SystemProperties.getLong(RemoteRefTable.class.getName() + ".eventTtlSeconds", 3600L));
+    private static final RemoteRefTable INSTANCE = new RemoteRefTable(TTL_MILLIS, EVENT_TTL_MILLIS);
+
+    private final long ttlMillis;
+    private final long eventTtlMillis;
+    // Remote URL to credentials key to heads
+    private final Map<String, Map<String, Entry>> entries = new ConcurrentHashMap<>();
+    private final Set<String> eventDrivenUrls = ConcurrentHashMap.newKeySet();
+    private final Map<String, Long> generations = new ConcurrentHashMap<>();
+    private final AtomicLong clears = new AtomicLong();
+    private final SingleFlight<List<String>, Map<String, String>> listings = new SingleFlight<>();
+
+    RemoteRefTable(long ttlMillis, long eventTtlMillis) {
+        this.ttlMillis = ttlMillis;
+        this.eventTtlMillis = eventTtlMillis;
+    }
+
+    /**
+     * Returns the controller wide table
+     * @return {@link RemoteRefTable}
+     */
+    @NonNull
+    public static RemoteRefTable get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the branch heads of the remote repository, listing them if they are not known or expired.
+     * @param gitSCM    Remote Jenkins File SCM which holds the credentials
+     * @param remoteUrl Remote URL to list
+     * @param context   Item used for credentials lookup
+     * @param listener  {@link TaskListener}
+     * @return Unmodifiable map of branch name to commit hash
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @NonNull
+    public Map<String, String> getHeads(@NonNull GitSCM gitSCM, @NonNull String remoteUrl, @CheckForNull Item context, @NonNull TaskListener listener) throws IOException, InterruptedException {
+        return this.getHeads(remoteUrl, RemoteGitSupport.getCredentialsKey(gitSCM, context),
+                () -> RemoteGitSupport.listHeads(gitSCM, remoteUrl, context, listener));
+    }
+
+    /**
+     * Same as {@link #getHeads(GitSCM, String, Item, TaskListener)} with the given listing
+     * @param remoteUrl      Remote URL to list
+     * @param credentialsKey Key of the credentials the lister uses
+     * @param lister         Lists the heads of the remote repository
+     * @return Unmodifiable map of branch name to commit hash
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @NonNull
+    Map<String, String> getHeads(@NonNull String remoteUrl, @NonNull String credentialsKey, @NonNull Callable<Map<String, String>> lister) throws IOException, InterruptedException {
+        Map<String, Entry> entriesOfUrl = this.entries.get(remoteUrl);
+        Entry entry = entriesOfUrl == null ? null : entriesOfUrl.get(credentialsKey);
+        long now = System.currentTimeMillis();
+        if (entry != null && now - entry.listedAt < this.getTtlMillis(remoteUrl)) {
+            return entry.heads;
+        }
+        try {
+            // Concurrent builds of the same remote repository with the same credentials share a single ls-remote
+            return this.listings.execute(Arrays.asList(remoteUrl, credentialsKey), () -> {
+                long generation = this.getGeneration(remoteUrl);
+                Map<String, String> heads = Collections.unmodifiableMap(lister.call());
+                // Heads which were listed before a push event may miss the pushed branches, do not keep them
+                this.entries.computeIfAbsent(remoteUrl, url -> new ConcurrentHashMap<>())
+                        .compute(credentialsKey, (key, previous) -> this.getGeneration(remoteUrl) == generation ? new Entry(now, heads) : previous);
+                return heads;
+            });
+        } catch (IOException | InterruptedException | RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Number of ls-remote calls which were run
+     * @return listings
+     */
+    public long getListings() {
+        return this.listings.getExecutions();
+    }
+
+    /**
+     * Number of ls-remote calls which were saved by sharing the result of a concurrent call
+     * @return coalesced listings
+     */
+    public long getCoalescedListings() {
+        return this.listings.getCoalesced();
+    }
+
+    /**
+     * Forgets the heads of the given remote repository for all credentials, they will be listed again on next access.
+     * @param remoteUrl Remote URL
+     */
+    public void invalidate(@NonNull String remoteUrl) {
+        this.generations.merge(remoteUrl, 1L, Long::sum);
+        this.entries.remove(remoteUrl);
+    }
+
+    /**
+     * Forgets the heads of the given remote repository because of a push event. Push events are delivered for the
+     * repository from now on, so its heads are kept for the event TTL instead of the polling TTL.
+     * @param remoteUrl Remote URL
+     */
+    public void onEvent(@NonNull String remoteUrl) {
+        this.eventDrivenUrls.add(remoteUrl);
+        this.invalidate(remoteUrl);
+    }
+
+    /**
+     * Remote URLs which have heads in the table
+     * @return Set of remote URLs
+     */
+    @NonNull
+    public Set<String> getRemoteUrls() {
+        return new TreeSet<>(this.entries.keySet());
+    }
+
+    private long getGeneration(String remoteUrl) {
+        // Both counters only grow, so the sum changes whenever the repository or the whole table was invalidated
+        return this.clears.get() + this.generations.getOrDefault(remoteUrl, 0L);
+    }
+
+    long getTtlMillis(String remoteUrl) {
+        return this.eventDrivenUrls.contains(remoteUrl) ? Math.max(this.ttlMillis, this.eventTtlMillis) : this.ttlMillis;
+    }
+
+    /**
+     * Forgets the heads of all remote repositories.
+     */
+    public void clear() {
+        this.clears.incrementAndGet();
+        this.entries.clear();
+        this.eventDrivenUrls.clear();
+    }
+
+    private static final class Entry {
+        private final long listedAt;
+        private final Map<String, String> heads;
+
+        private Entry(long listedAt, Map<String, String> heads) {
+            this.listedAt = listedAt;
+            this.heads = heads;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Jenkins file content read from a remote repository together with the revision it was read from.
+ */
+public final class ResolvedJenkinsFile {
+
+    private final String remoteUrl;
+    private final String credentialsKey;
+    private final String revision;
+    private final String scriptPath;
+    private final String script;
+
+    /**
+     * Constructor for the class.
+     *
+     * @param remoteUrl      Remote URL of the Jenkins file repository
+     * @param credentialsKey Credentials the Jenkins file was read with, see {@link RemoteGitSupport#getCredentialsKey}
+     * @param revision       Commit hash the Jenkins file is read from
+     * @param scriptPath     Path of the Jenkins file
+     * @param script         Content of the Jenkins file
+     */
+    public ResolvedJenkinsFile(@NonNull String remoteUrl, @NonNull String credentialsKey, @NonNull String revision,
+                               @NonNull String scriptPath, @NonNull String script) {
+        this.remoteUrl = remoteUrl;
+        this.credentialsKey = credentialsKey;
+        this.revision = revision;
+        this.scriptPath = scriptPath;
+        this.script = script;
+    }
+
+    @NonNull
+    public String getRemoteUrl() {
+        return remoteUrl;
+    }
+
+    @NonNull
+    public String getCredentialsKey() {
+        return credentialsKey;
+    }
+
+    @NonNull
+    public String getRevision() {
+        return revision;
+    }
+
+    @NonNull
+    public String getScriptPath() {
+        return scriptPath;
+    }
+
+    @NonNull
+    public String getScript() {
+        return script;
+    }
+
+    /**
+     * Key of this Jenkins file in {@link JenkinsfileCache}
+     * @return {@link JenkinsfileCache.Key}
+     */
+    @NonNull
+    public JenkinsfileCache.Key getKey() {
+        return new JenkinsfileCache.Key(remoteUrl, credentialsKey, revision, scriptPath);
+    }
+}
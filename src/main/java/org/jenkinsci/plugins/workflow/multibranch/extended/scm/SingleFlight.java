@@ -0,0 +1,78 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent calls for the same key: the first caller runs the task, every caller which arrives while it
+ * is running waits for and receives the same result or exception.
+ *
+ * @param <K> Key type
+ * @param <V> Result type
+ */
+public final class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Runs the task for the key, or waits for the task which is already running for the same key.
+     * @param key  Key of the task
+     * @param task Task to run
+     * @return Result of the task
+     * @throws Exception thrown by the task
+     */
+    public V execute(@NonNull K key, @NonNull Callable<V> task) throws Exception {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> running = this.inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            this.coalesced.incrementAndGet();
+            try {
+                return running.get();
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw ex;
+            }
+        }
+        this.executions.incrementAndGet();
+        try {
+            V result = task.call();
+            future.complete(result);
+            return result;
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+            throw t;
+        } finally {
+            this.inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * Number of tasks which were actually run
+     * @return executions
+     */
+    public long getExecutions() {
+        return this.executions.get();
+    }
+
+    /**
+     * Number of calls which received the result of a task run by another caller, i.e. saved executions
+     * @return coalesced calls
+     */
+    public long getCoalesced() {
+        return this.coalesced.get();
+    }
+}
@@ -10,16 +10,21 @@ import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.jenkinsci.plugins.workflow.multibranch.WorkflowMultiBranchProject;
 import org.jenkinsci.plugins.workflow.multibranch.extended.scm.ExcludeFromChangeSet;
-import org.junit.Assert;
+import org.jenkinsci.plugins.workflow.multibranch.extended.scm.ExcludeFromPoll;
+import org.jenkinsci.plugins.workflow.multibranch.extended.scm.JenkinsfileCache;
+import org.jenkinsci.plugins.workflow.multibranch.extended.scm.RemoteJenkinsFileScriptStore;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.JenkinsRule;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 
 public class ExcludeFromChangeSetTest {
@@ -40,6 +45,7 @@ public class ExcludeFromChangeSetTest {
     private final String pipelineScript = "pipeline { agent any; stages { stage('ReadFile') { steps {echo readFile('file')} } } }";
     private final String localFile = "pom.xml";
     private final String changeNotVisible = "ChangeNotVisible";
+    private final String changeVisible = "ChangeVisible";
 
     @Before
     public void setup() throws Exception {
@@ -52,7 +58,35 @@ public class ExcludeFromChangeSetTest {
         // Init Remote Jenkins File Repo with test Jenkinsfile
         this.initRemoteJenkinsFileRepoWithPipelineScript(new ExcludeFromChangeSet());
         // Create And TestsourceCodeRepo
-        this.createProjectAndTest();
+        this.createProjectAndTest(false);
+    }
+
+    @Test
+    public void testRemoteJenkinsFileWithoutExclusion() throws Exception {
+        // Init Remote Jenkins File Repo with test Jenkinsfile, commits to it are part of the change set
+        this.initRemoteJenkinsFileRepoWithPipelineScript(null);
+        // Create And TestsourceCodeRepo
+        this.createProjectAndTest(true);
+    }
+
+    @Test
+    public void testBranchJobsShareCheckoutOfSameRemoteCommit() throws Exception {
+        this.sourceCodeRepo.git("checkout", "-b", "feature", "master");
+        this.sourceCodeRepo.write("file", this.testFileInitalContent + "feature");
+        this.sourceCodeRepo.git("commit", "--all", "--message=FeatureBranch");
+        // Only repositories which are excluded from poll and change set are shared
+        this.initRemoteJenkinsFileRepoWithPipelineScript(new ExcludeFromChangeSet());
+        this.remoteJenkinsFileRepoSCM.getExtensions().add(new ExcludeFromPoll());
+        WorkflowMultiBranchProject workflowMultiBranchProject = this.createProjectWithRemoteJenkinsFile();
+        this.indexMultiBranchPipeline(workflowMultiBranchProject, 2);
+        // Builds of the indexing checked out the remote commit, the next builds must not find it in the cache
+        JenkinsfileCache.get().clear();
+        String revision = this.remoteJenkinsFileRepo.head();
+        for (String branchName : Arrays.asList("master", "feature")) {
+            WorkflowRun run = this.jenkins.buildAndAssertSuccess(workflowMultiBranchProject.getJob(branchName));
+            this.jenkins.assertLogContains("from script store for revision " + revision, run);
+        }
+        assertEquals(2, RemoteJenkinsFileScriptStore.get().getReferenceCount(this.remoteJenkinsFileRepo.toString(), "", revision));
     }
 
     private void initSourceCodeRepo() throws Exception {
@@ -100,7 +134,7 @@ public class ExcludeFromChangeSetTest {
         assertEquals(expectedBranches, workflowMultiBranchProject.getItems().size());
     }
 
-    private void checkBranchJobsAndLogs(WorkflowMultiBranchProject workflowMultiBranchProject) throws Exception {
+    private void checkBranchJobsAndLogs(WorkflowMultiBranchProject workflowMultiBranchProject, boolean remoteChangeVisible) throws Exception {
         // Check build num and logs for created Branch Jobs
         for (String branchName : this.scmBranches) {
             WorkflowJob branchJob = workflowMultiBranchProject.getJob(branchName);
@@ -112,12 +146,11 @@ public class ExcludeFromChangeSetTest {
             this.jenkins.waitUntilNoActivity();
             lastBuild = branchJob.getLastBuild();
             assertEquals(2, lastBuild.getNumber());
-            lastBuild.getChangeSets().forEach(changeLogSet -> Arrays.asList(changeLogSet.getItems()).forEach(o -> {
-                GitChangeSet gitChangeSet = (GitChangeSet) o;
-                if (gitChangeSet.getMsg().contains(changeNotVisible)) {
-                    Assert.fail("Change Commit is visible");
-                }
-            }));
+            List<String> messages = new ArrayList<>();
+            lastBuild.getChangeSets().forEach(changeLogSet -> Arrays.asList(changeLogSet.getItems()).forEach(o -> messages.add(((GitChangeSet) o).getMsg())));
+            // Change of the source code repository is always listed, so an empty change set does not pass
+            assertTrue("Source code change is not visible in " + messages, messages.contains(this.changeVisible));
+            assertEquals("Remote Jenkins file change visibility in " + messages, remoteChangeVisible, messages.contains(this.changeNotVisible));
         }
     }
 
@@ -129,13 +162,13 @@ public class ExcludeFromChangeSetTest {
         this.sourceCodeRepo.git("commit", "--all", "--message=ChangeVisible");
     }
 
-    private void createProjectAndTest() throws Exception {
+    private void createProjectAndTest(boolean remoteChangeVisible) throws Exception {
         // Create project with Remote Jenkins File Plugin
         WorkflowMultiBranchProject workflowMultiBranchProject = this.createProjectWithRemoteJenkinsFile();
         // Index MultiBranchProject
         this.indexMultiBranchPipeline(workflowMultiBranchProject, scmBranches.length);
         // Run and check Branch Jobs
-        this.checkBranchJobsAndLogs(workflowMultiBranchProject);
+        this.checkBranchJobsAndLogs(workflowMultiBranchProject, remoteChangeVisible);
     }
 
 
@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 
 
 public class ExcludeFromPollTest {
@@ -61,7 +62,15 @@ public class ExcludeFromPollTest {
         // Init Remote Jenkins File Repo with test Jenkinsfile
         this.initRemoteJenkinsFileRepoWithPipelineScript(new ExcludeFromPoll());
         // Create And TestsourceCodeRepo
-        this.createProjectAndTest();
+        this.createProjectAndTest(1);
+    }
+
+    @Test
+    public void testRemoteJenkinsFileWithoutExclusion() throws Exception {
+        // Init Remote Jenkins File Repo with test Jenkinsfile, commits to it trigger a build
+        this.initRemoteJenkinsFileRepoWithPipelineScript(null);
+        // Create And TestsourceCodeRepo
+        this.createProjectAndTest(2);
     }
 
     private void initSourceCodeRepo() throws Exception {
@@ -109,7 +118,7 @@ public class ExcludeFromPollTest {
         assertEquals(expectedBranches, workflowMultiBranchProject.getItems().size());
     }
 
-    private void checkBranchJobsAndLogs(WorkflowMultiBranchProject workflowMultiBranchProject) throws Exception {
+    private void checkBranchJobsAndLogs(WorkflowMultiBranchProject workflowMultiBranchProject, int expectedBuildNumber) throws Exception {
         // Check build num and logs for created Branch Jobs
         for (String branchName : this.scmBranches) {
             WorkflowJob branchJob = workflowMultiBranchProject.getJob(branchName);
@@ -118,10 +127,11 @@ public class ExcludeFromPollTest {
             assertEquals(1, lastBuild.getNumber());
             this.addDummyCommit();
             SCMTrigger scmTrigger = branchJob.getSCMTrigger();
-            branchJob.getSCMTrigger().run();
+            assertNotNull(scmTrigger);
+            scmTrigger.run();
             this.jenkins.waitUntilNoActivity();
             lastBuild = branchJob.getLastBuild();
-            assertEquals(1, lastBuild.getNumber());
+            assertEquals(expectedBuildNumber, lastBuild.getNumber());
         }
     }
 
@@ -130,13 +140,13 @@ public class ExcludeFromPollTest {
         this.remoteJenkinsFileRepo.git("commit", "--all", "--message=NoPolling");
     }
 
-    private void createProjectAndTest() throws Exception {
+    private void createProjectAndTest(int expectedBuildNumber) throws Exception {
         // Create project with Remote Jenkins File Plugin
         WorkflowMultiBranchProject workflowMultiBranchProject = this.createProjectWithRemoteJenkinsFile();
         // Index MultiBranchProject
         this.indexMultiBranchPipeline(workflowMultiBranchProject, scmBranches.length);
         // Run and check Branch Jobs
-        this.checkBranchJobsAndLogs(workflowMultiBranchProject);
+        this.checkBranchJobsAndLogs(workflowMultiBranchProject, expectedBuildNumber);
     }
 
 
@@ -6,6 +6,7 @@ import hudson.Launcher;
 import hudson.Proc;
 import hudson.model.TaskListener;
 import jenkins.plugins.git.GitSCMSource;
+import jenkins.plugins.git.GitSampleRepoRule;
 import jenkins.scm.api.SCMNavigator;
 import jenkins.scm.api.SCMNavigatorDescriptor;
 import jenkins.scm.api.SCMSourceObserver;
@@ -83,6 +84,20 @@ public class GitDirectorySCMNavigator extends SCMNavigator {
     }
     private static final Pattern ORIGIN = Pattern.compile("origin\t(.+) [(]fetch[)]");
 
+    /**
+     * Fills the directory with independent copies of the repository, all branches included, which are picked up by
+     * this navigator as separate sources named {@code prefix-0} to {@code prefix-(count-1)}.
+     */
+    public static void populate(GitSampleRepoRule repository, File directory, String prefix, int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            String gitDir = new File(new File(directory, prefix + "-" + i), ".git").getAbsolutePath();
+            repository.git("clone", "--bare", "--quiet", ".", gitDir);
+            repository.git("--git-dir=" + gitDir, "config", "core.bare", "false");
+            // Without origin the copy itself is used as the source repository
+            repository.git("--git-dir=" + gitDir, "remote", "remove", "origin");
+        }
+    }
+
     @Extension @Symbol("gitDirectory")
     public static class DescriptorImpl extends SCMNavigatorDescriptor {
 
@@ -103,16 +103,19 @@ public class LookupInParametersTest {
         // Check build num and logs for created Branch Jobs
         for (String branchName : this.scmBranches) {
             WorkflowJob branchJob = workflowMultiBranchProject.getJob(branchName);
-            WorkflowRun lastBuild = branchJob.getLastBuild();
-            lastBuild.writeWholeLogTo(System.out);
-            jenkins.assertLogContains("pipelineScriptDefault", lastBuild);
+            WorkflowRun firstBuild = branchJob.getLastBuild();
+            firstBuild.writeWholeLogTo(System.out);
+            jenkins.assertLogContains("pipelineScriptDefault", firstBuild);
             jenkins.waitUntilNoActivity();
             branchJob.scheduleBuild2(0, new ParametersAction(new StringParameterValue("JenkinsFileParam","jenkinsFile2")));
             jenkins.waitUntilNoActivity();
-            lastBuild = branchJob.getLastBuild();
+            WorkflowRun lastBuild = branchJob.getLastBuild();
             lastBuild.writeWholeLogTo(System.out);
             jenkins.assertLogContains("pipelineScript2", lastBuild);
             jenkins.waitUntilNoActivity();
+            // Each run keeps the Jenkins file it resolved
+            assertEquals(this.jenkinsFile2, lastBuild.getEnvironment().get(RemoteJenkinsFileItemListener.RJPP_JFILE_ENV_NAME));
+            assertEquals(this.jenkinsFileDefault, firstBuild.getEnvironment().get(RemoteJenkinsFileItemListener.RJPP_JFILE_ENV_NAME));
         }
     }
 
@@ -0,0 +1,171 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended;
+
+import hudson.plugins.git.GitSCM;
+import jenkins.branch.OrganizationFolder;
+import jenkins.plugins.git.GitSampleRepoRule;
+import org.jenkinsci.plugins.workflow.actions.TimingAction;
+import org.jenkinsci.plugins.workflow.cps.nodes.StepAtomNode;
+import org.jenkinsci.plugins.workflow.flow.FlowExecution;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.graphanalysis.DepthFirstScanner;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Opt-in scale test, run with:
+ * {@code mvn test -Dtest=RemoteJenkinsFileScaleTest -DscaleTest=true -Dscale.repositories=50 -Dscale.branches=100 -Dscale.burst=200}
+ * <p>
+ * Generates repositories with branches in a directory scanned by {@link GitDirectorySCMNavigator}, indexes them with
+ * {@link RemoteJenkinsFileWorkflowMultiBranchProjectFactory}, triggers a burst of concurrent builds and compares
+ * indexing time, queue to first step latency and heap per branch job with the committed thresholds.
+ */
+public class RemoteJenkinsFileScaleTest {
+
+    private static final String SCRIPT = "Jenkinsfile";
+    private static final String LOCAL_MARKER = "source.txt";
+
+    private final int repositories = Integer.getInteger("scale.repositories", 5);
+    private final int branches = Integer.getInteger("scale.branches", 20);
+    private final int burst = Integer.getInteger("scale.burst", 50);
+    private final boolean matchBranches = Boolean.parseBoolean(System.getProperty("scale.matchBranches", "true"));
+
+    @Rule
+    public JenkinsRule r = new JenkinsRule();
+    @Rule
+    public GitSampleRepoRule remoteJenkinsFileRepo = new GitSampleRepoRule();
+    @Rule
+    public GitSampleRepoRule sourceCodeRepo = new GitSampleRepoRule();
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Before
+    public void onlyWhenRequested() {
+        assumeTrue("Scale test runs only with -DscaleTest=true", Boolean.getBoolean("scaleTest"));
+    }
+
+    @Test
+    public void testIndexingAndBuildBurst() throws Exception {
+        Properties thresholds = new Properties();
+        try (InputStream inputStream = getClass().getResourceAsStream("RemoteJenkinsFileScaleTest/thresholds.properties")) {
+            thresholds.load(inputStream);
+        }
+
+        // Remote Jenkins file only has master, other branches use the fallback branch with Match Branches option
+        remoteJenkinsFileRepo.init();
+        remoteJenkinsFileRepo.write(SCRIPT, "echo 'scale'");
+        remoteJenkinsFileRepo.git("add", SCRIPT);
+        remoteJenkinsFileRepo.git("commit", "--all", "--message=first_commit");
+
+        sourceCodeRepo.init();
+        sourceCodeRepo.write(LOCAL_MARKER, "source code");
+        sourceCodeRepo.git("add", LOCAL_MARKER);
+        sourceCodeRepo.git("commit", "--all", "--message=first_commit");
+        for (int i = 1; i < branches; i++) {
+            sourceCodeRepo.git("branch", "feature-" + i);
+        }
+        File clones = tmp.newFolder();
+        GitDirectorySCMNavigator.populate(sourceCodeRepo, clones, "source", repositories);
+        int expectedJobs = repositories * branches;
+
+        long heapBefore = usedHeap();
+        OrganizationFolder top = r.jenkins.createProject(OrganizationFolder.class, "top");
+        top.getNavigators().add(new GitDirectorySCMNavigator(clones.getAbsolutePath()));
+        top.getProjectFactories().clear();
+        top.getProjectFactories().add(new RemoteJenkinsFileWorkflowMultiBranchProjectFactory(LOCAL_MARKER, SCRIPT, new GitSCM(remoteJenkinsFileRepo.toString()), matchBranches, false));
+
+        // Indexing: organization folder scan and branch indexing until all branch jobs exist, waiting longer than the
+        // threshold allows would only delay the failure
+        long indexingLimitMillis = threshold(thresholds, "indexingMillisPerBranchJob") * expectedJobs;
+        long indexingStarted = System.nanoTime();
+        top.scheduleBuild2(0).getFuture().get();
+        int jobCount;
+        while ((jobCount = r.jenkins.getAllItems(WorkflowJob.class).size()) < expectedJobs) {
+            if (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - indexingStarted) > indexingLimitMillis) {
+                fail("Only " + jobCount + " of " + expectedJobs + " branch jobs exist after " + indexingLimitMillis + " ms of indexing");
+            }
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+        long indexingMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - indexingStarted);
+        r.waitUntilNoActivityUpTo((int) TimeUnit.HOURS.toMillis(1));
+
+        List<WorkflowJob> jobs = r.jenkins.getAllItems(WorkflowJob.class);
+        assertEquals(expectedJobs, jobs.size());
+        Collections.shuffle(jobs);
+
+        // Burst: schedule builds of many branch jobs at once
+        List<Future<WorkflowRun>> futures = new ArrayList<>();
+        long scheduled = System.currentTimeMillis();
+        for (WorkflowJob job : jobs.subList(0, Math.min(burst, jobs.size()))) {
+            futures.add(job.scheduleBuild2(0));
+        }
+        List<Long> latencies = new ArrayList<>();
+        for (Future<WorkflowRun> future : futures) {
+            WorkflowRun run = r.assertBuildStatusSuccess(future);
+            latencies.add(firstStepStarted(run) - scheduled);
+        }
+        Collections.sort(latencies);
+        long p50 = latencies.get(latencies.size() / 2);
+        long p95 = latencies.get((int) Math.ceil(latencies.size() * 0.95) - 1);
+        // Heap is measured once all builds completed, so that only what the branch jobs and their builds retain counts
+        r.waitUntilNoActivityUpTo((int) TimeUnit.HOURS.toMillis(1));
+        long heapPerJob = Math.max(0, usedHeap() - heapBefore) / expectedJobs;
+
+        System.out.format("Scale test: %d repositories, %d branches, %d branch jobs, burst of %d builds%n", repositories, branches, expectedJobs, futures.size());
+        System.out.format("  indexing: %d ms (%d ms per branch job)%n", indexingMillis, indexingMillis / expectedJobs);
+        System.out.format("  queue to first step: p50 %d ms, p95 %d ms, max %d ms%n", p50, p95, latencies.get(latencies.size() - 1));
+        System.out.format("  heap: %d bytes per branch job%n", heapPerJob);
+
+        assertThreshold(thresholds, "indexingMillisPerBranchJob", indexingMillis / expectedJobs);
+        assertThreshold(thresholds, "queueToFirstStepMillisP95", p95);
+        assertThreshold(thresholds, "heapBytesPerBranchJob", heapPerJob);
+    }
+
+    private static long firstStepStarted(WorkflowRun run) {
+        FlowExecution execution = run.getExecution();
+        long started = Long.MAX_VALUE;
+        for (FlowNode node : new DepthFirstScanner().allNodes(execution)) {
+            if (node instanceof StepAtomNode) {
+                started = Math.min(started, TimingAction.getStartTime(node));
+            }
+        }
+        assertTrue("No step was run in " + run, started != Long.MAX_VALUE);
+        return started;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long threshold(Properties thresholds, String name) {
+        return Long.parseLong(thresholds.getProperty(name));
+    }
+
+    private static void assertThreshold(Properties thresholds, String name, long value) {
+        long threshold = threshold(thresholds, name);
+        assertTrue(name + " " + value + " exceeds threshold " + threshold, value <= threshold);
+    }
+}
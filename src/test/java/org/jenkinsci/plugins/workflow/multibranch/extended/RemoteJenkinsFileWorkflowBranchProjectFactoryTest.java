@@ -1,10 +1,12 @@
 package org.jenkinsci.plugins.workflow.multibranch.extended;
 
+import com.sun.net.httpserver.HttpServer;
 import hudson.EnvVars;
 import hudson.model.Label;
 import hudson.plugins.git.BranchSpec;
 import hudson.plugins.git.GitSCM;
 import hudson.plugins.git.UserRemoteConfig;
+import hudson.plugins.git.util.BuildData;
 import hudson.slaves.DumbSlave;
 import jenkins.branch.BranchSource;
 import jenkins.plugins.git.GitSCMSource;
@@ -13,16 +15,33 @@ import org.apache.commons.lang.StringUtils;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.jenkinsci.plugins.workflow.multibranch.WorkflowMultiBranchProject;
+import org.jenkinsci.plugins.workflow.multibranch.extended.scm.ExcludeFromChangeSet;
+import org.jenkinsci.plugins.workflow.multibranch.extended.scm.ExcludeFromPoll;
+import org.jenkinsci.plugins.workflow.multibranch.extended.scm.ExtendedSCMBinder;
+import org.jenkinsci.plugins.workflow.multibranch.extended.scm.JenkinsfileCache;
+import org.jenkinsci.plugins.workflow.multibranch.extended.scm.RemoteJenkinsFileAction;
+import org.jenkinsci.plugins.workflow.multibranch.extended.scm.RemoteJenkinsFileTimingAction;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.JenkinsRule;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
@@ -49,6 +68,7 @@ public class RemoteJenkinsFileWorkflowBranchProjectFactoryTest {
     private String pipelineScriptWithSlave = "pipeline { agent { label '%s' } ; stages { stage('ReadFile') { steps {echo readFile('file')} } } }";
     private String localFileMarker = "";
     private String localFileName = "pom.xml";
+    private boolean lightweight = false;
 
     @Before
     public void setup() throws Exception {
@@ -118,6 +138,155 @@ public class RemoteJenkinsFileWorkflowBranchProjectFactoryTest {
         this.createProjectAndTest(false, this.localFileMarker,this.defaultFallBackBranch);
     }
 
+    @Test
+    public void testRemoteJenkinsFileMatchBranchesTrueLightweight() throws Exception {
+        // Init Remote Jenkins File Repo with test Jenkinsfile
+        this.initRemoteJenkinsFileRepoWithPipelineScript();
+        // Read only the Jenkinsfile
+        this.lightweight = true;
+        // Create And Test
+        this.createProjectAndTest(true, this.localFileMarker,this.defaultFallBackBranch);
+    }
+
+    @Test
+    public void testRemoteJenkinsFileSCMIsNotSavedWithBranchJob() throws Exception {
+        // Init Remote Jenkins File Repo with test Jenkinsfile
+        this.initRemoteJenkinsFileRepoWithPipelineScript();
+        WorkflowMultiBranchProject workflowMultiBranchProject = this.createProjectWithRemoteJenkinsFile(true, this.localFileMarker, this.defaultFallBackBranch);
+        this.indexMultiBranchPipeline(workflowMultiBranchProject, this.scmBranches.length);
+        WorkflowJob branchJob = workflowMultiBranchProject.getJob("master");
+        branchJob.save();
+        String config = branchJob.getConfigFile().asString();
+        assertFalse(config.contains("remoteJenkinsFileSCM"));
+        assertFalse(config.contains("matchBranchFailMessage"));
+        // SCM is resolved from the project factory after the job is loaded again
+        this.jenkins.jenkins.reload();
+        workflowMultiBranchProject = this.jenkins.jenkins.getItemByFullName(this.projectName, WorkflowMultiBranchProject.class);
+        WorkflowRun build = this.jenkins.buildAndAssertSuccess(workflowMultiBranchProject.getJob("master"));
+        jenkins.assertLogContains(this.testFileInitalContent + "master", build);
+    }
+
+    @Test
+    public void testConfigurationIsPropagatedToAffectedBranchJobs() throws Exception {
+        // Init Remote Jenkins File Repo with test Jenkinsfile
+        this.initRemoteJenkinsFileRepoWithPipelineScript();
+        WorkflowMultiBranchProject workflowMultiBranchProject = this.createProjectWithRemoteJenkinsFile(true, this.localFileMarker, this.defaultFallBackBranch);
+        this.indexMultiBranchPipeline(workflowMultiBranchProject, this.scmBranches.length);
+        assertEquals(0, RemoteJenkinsFileConfigurationPropagator.propagate(workflowMultiBranchProject).get().intValue());
+
+        RemoteJenkinsFileWorkflowBranchProjectFactory factory = (RemoteJenkinsFileWorkflowBranchProjectFactory) workflowMultiBranchProject.getProjectFactory();
+        factory.setFallbackBranch(this.testFallbackBranch);
+        assertEquals(this.scmBranches.length, RemoteJenkinsFileConfigurationPropagator.propagate(workflowMultiBranchProject).get().intValue());
+        factory.setLightweight(true);
+        // This branch job is already up to date and must not be saved again
+        workflowMultiBranchProject.getJob("feature").setDefinition(factory.createDefinition());
+        assertEquals(this.scmBranches.length - 1, RemoteJenkinsFileConfigurationPropagator.propagate(workflowMultiBranchProject).get().intValue());
+        for (String branchName : this.scmBranches) {
+            ExtendedSCMBinder definition = (ExtendedSCMBinder) workflowMultiBranchProject.getJob(branchName).getDefinition();
+            assertTrue(definition.isLightweight());
+        }
+    }
+
+    @Test
+    public void testMissingBranchFallsBackWithoutCheckout() throws Exception {
+        // Init Remote Jenkins File Repo with test Jenkinsfile, it has the master branch only
+        this.initRemoteJenkinsFileRepoWithPipelineScript();
+        WorkflowMultiBranchProject workflowMultiBranchProject = this.createProjectWithRemoteJenkinsFile(true, this.localFileMarker, this.defaultFallBackBranch);
+        this.indexMultiBranchPipeline(workflowMultiBranchProject, this.scmBranches.length);
+        for (String branchName : new String[]{"feature", "hotfix"}) {
+            WorkflowRun lastBuild = workflowMultiBranchProject.getJob(branchName).getLastBuild();
+            this.jenkins.assertBuildStatusSuccess(lastBuild);
+            jenkins.assertLogContains("Try to checkout " + this.defaultFallBackBranch, lastBuild);
+            RemoteJenkinsFileAction remoteJenkinsFileAction = lastBuild.getAction(RemoteJenkinsFileAction.class);
+            assertTrue(remoteJenkinsFileAction.isFallback());
+            assertEquals(this.defaultFallBackBranch, remoteJenkinsFileAction.getBranch());
+            // Branch was picked from the ref table, the missing branch was never checked out
+            List<String> phases = this.getPhaseNames(lastBuild);
+            assertTrue(phases.contains(RemoteJenkinsFileTimingAction.BRANCH_MATCHING));
+            assertFalse(phases.contains(RemoteJenkinsFileTimingAction.FAILED_MATCH_CHECKOUT));
+        }
+    }
+
+    @Test
+    public void testPrefetchedJenkinsFileIsUsedByFirstBuild() throws Exception {
+        // Init Remote Jenkins File Repo with test Jenkinsfile
+        this.initRemoteJenkinsFileRepoWithPipelineScript();
+        // Full checkouts are only skipped if they would record nothing for polling and change sets
+        this.remoteJenkinsFileRepoSCM.getExtensions().add(new ExcludeFromPoll());
+        this.remoteJenkinsFileRepoSCM.getExtensions().add(new ExcludeFromChangeSet());
+        JenkinsfileCache.get().clear();
+        WorkflowMultiBranchProject workflowMultiBranchProject = this.createProjectWithRemoteJenkinsFile(true, this.localFileMarker, this.defaultFallBackBranch);
+        ((RemoteJenkinsFileWorkflowBranchProjectFactory) workflowMultiBranchProject.getProjectFactory()).setPrefetch(true);
+        // Keep the first builds in the queue until the prefetch is done
+        this.jenkins.jenkins.setNumExecutors(0);
+        workflowMultiBranchProject.scheduleBuild2(0);
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(60);
+        while (JenkinsfileCache.get().size() == 0) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Jenkins file was not prefetched while indexing");
+            }
+            Thread.sleep(100);
+        }
+        this.jenkins.jenkins.setNumExecutors(2);
+        this.jenkins.waitUntilNoActivity();
+        for (String branchName : this.scmBranches) {
+            WorkflowRun firstBuild = workflowMultiBranchProject.getJob(branchName).getBuildByNumber(1);
+            this.jenkins.assertBuildStatusSuccess(firstBuild);
+            jenkins.assertLogContains("from cache for revision", firstBuild);
+            RemoteJenkinsFileTimingAction timingAction = firstBuild.getAction(RemoteJenkinsFileTimingAction.class);
+            assertEquals(RemoteJenkinsFileTimingAction.CACHE_HIT, timingAction.getCacheResult());
+            assertEquals(0, timingAction.getJenkinsfileBytes());
+            assertFalse(this.getPhaseNames(firstBuild).contains(RemoteJenkinsFileTimingAction.CHECKOUT));
+        }
+    }
+
+    @Test
+    public void testFullCheckoutIsRecordedForCachedRevision() throws Exception {
+        // Init Remote Jenkins File Repo with test Jenkinsfile
+        this.initRemoteJenkinsFileRepoWithPipelineScript();
+        JenkinsfileCache.get().clear();
+        WorkflowMultiBranchProject workflowMultiBranchProject = this.createProjectWithRemoteJenkinsFile(true, this.localFileMarker, this.defaultFallBackBranch);
+        this.indexMultiBranchPipeline(workflowMultiBranchProject, this.scmBranches.length);
+        WorkflowJob branchJob = workflowMultiBranchProject.getJob("master");
+        // Same remote revision again, the checkout still records it for polling and the changelog
+        WorkflowRun lastBuild = this.jenkins.buildAndAssertSuccess(branchJob);
+        assertEquals(2, lastBuild.getNumber());
+        jenkins.assertLogNotContains("from cache for revision", lastBuild);
+        jenkins.assertLogContains("Checking out", lastBuild);
+        assertTrue(lastBuild.getActions(BuildData.class).stream().anyMatch(buildData -> buildData.getRemoteUrls().contains(this.remoteJenkinsFileRepo.toString())));
+        assertTrue(this.getPhaseNames(lastBuild).contains(RemoteJenkinsFileTimingAction.CHECKOUT));
+    }
+
+    @Test
+    public void testRemoteJenkinsFileRecordsBranchOfBranchSpec() throws Exception {
+        // Init Remote Jenkins File Repo with test Jenkinsfile
+        this.initRemoteJenkinsFileRepoWithPipelineScript();
+        this.remoteJenkinsFileRepoSCM = new GitSCM(GitSCM.createRepoList(this.remoteJenkinsFileRepo.toString(), ""),
+                Collections.singletonList(new BranchSpec("*/master")), null, null, null);
+        WorkflowMultiBranchProject workflowMultiBranchProject = this.createProjectWithRemoteJenkinsFile(false, this.localFileMarker, this.defaultFallBackBranch);
+        this.indexMultiBranchPipeline(workflowMultiBranchProject, this.scmBranches.length);
+        WorkflowRun lastBuild = workflowMultiBranchProject.getJob("feature").getLastBuild();
+        this.jenkins.assertBuildStatusSuccess(lastBuild);
+        // Branch specifier is recorded as the branch name, not as */master
+        assertEquals("master", lastBuild.getAction(RemoteJenkinsFileAction.class).getBranch());
+    }
+
+    @Test
+    public void testRemoteJenkinsFileOverHttpUsesBranchOfBranchSpec() throws Exception {
+        // Init Remote Jenkins File Repo with test Jenkinsfile
+        this.initRemoteJenkinsFileRepoWithPipelineScript();
+        this.remoteJenkinsFileRepoSCM = new GitSCM(GitSCM.createRepoList(this.remoteJenkinsFileRepo.toString(), ""),
+                Collections.singletonList(new BranchSpec("*/master")), null, null, null);
+        this.createProjectOverHttpAndTest(this.testFallbackBranch);
+    }
+
+    @Test
+    public void testRemoteJenkinsFileOverHttpWithoutSCM() throws Exception {
+        // Only the fallback branch tells where the Jenkins file is read from
+        this.remoteJenkinsFileRepoSCM = null;
+        this.createProjectOverHttpAndTest(this.jenkinsFileRepoBranch);
+    }
+
     @Test
     public void testRemoteJenkinsFileMatchBranchesTrueOnSlave() throws Exception {
         DumbSlave dumbSlave = this.jenkins.createOnlineSlave(Label.parseExpression("slave"));
@@ -182,6 +351,7 @@ public class RemoteJenkinsFileWorkflowBranchProjectFactoryTest {
         WorkflowMultiBranchProject workflowMultiBranchProject = this.jenkins.createProject(WorkflowMultiBranchProject.class, this.projectName);
         workflowMultiBranchProject.getSourcesList().add(new BranchSource(this.sourceCodeRepoSCMSource));
         RemoteJenkinsFileWorkflowBranchProjectFactory remoteJenkinsFileWorkflowBranchProjectFactory = new RemoteJenkinsFileWorkflowBranchProjectFactory(this.jenkinsFile, localFileMarker, this.remoteJenkinsFileRepoSCM, matchBranches, fallBackBranch,false);
+        remoteJenkinsFileWorkflowBranchProjectFactory.setLightweight(this.lightweight);
         workflowMultiBranchProject.setProjectFactory(remoteJenkinsFileWorkflowBranchProjectFactory);
         return workflowMultiBranchProject;
     }
@@ -217,12 +387,62 @@ public class RemoteJenkinsFileWorkflowBranchProjectFactoryTest {
                 assertEquals(this.remoteJenkinsFileRepoSCM.getRepositories().get(0).getURIs().get(0).toString(), environment.get(RemoteJenkinsFileItemListener.RJPP_SCM_ENV_NAME));
                 assertEquals(branchNameToCheck, environment.get(RemoteJenkinsFileItemListener.RJPP_BRANCH_ENV_NAME));
                 assertEquals(this.localFileMarker, environment.get(RemoteJenkinsFileItemListener.RJPP_LOCAL_MARKER_ENV_NAME));
+                //Check Resolution Timings
+                RemoteJenkinsFileTimingAction timingAction = lastBuild.getAction(RemoteJenkinsFileTimingAction.class);
+                assertNotNull(timingAction);
+                assertFalse(timingAction.getPhases().isEmpty());
+                assertTrue(timingAction.getJenkinsfileBytes() > 0 || RemoteJenkinsFileTimingAction.CACHE_HIT.equals(timingAction.getCacheResult()));
             } else {
                 assertNull(branchJob);
             }
         }
     }
 
+    private List<String> getPhaseNames(WorkflowRun run) {
+        return run.getAction(RemoteJenkinsFileTimingAction.class).getPhases().stream()
+                .map(RemoteJenkinsFileTimingAction.Phase::getName)
+                .collect(Collectors.toList());
+    }
+
+    private void createProjectOverHttpAndTest(String fallBackBranch) throws Exception {
+        // Serve the Jenkins file of the master branch only, and remember what was asked for
+        List<String> paths = new CopyOnWriteArrayList<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/raw/", exchange -> {
+            paths.add(exchange.getRequestURI().getRawPath());
+            if (exchange.getRequestURI().getRawPath().equals("/raw/master/" + this.jenkinsFile)) {
+                byte[] body = this.pipelineScript.getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+            }
+            exchange.close();
+        });
+        server.start();
+        try {
+            String url = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/raw/${branch}/${path}";
+            WorkflowMultiBranchProject workflowMultiBranchProject = this.createProjectWithRemoteJenkinsFile(false, this.localFileMarker, fallBackBranch);
+            ((RemoteJenkinsFileWorkflowBranchProjectFactory) workflowMultiBranchProject.getProjectFactory()).setRemoteJenkinsFileUrl(url);
+            this.indexMultiBranchPipeline(workflowMultiBranchProject, this.scmBranches.length);
+            for (String branchName : this.scmBranches) {
+                WorkflowRun lastBuild = workflowMultiBranchProject.getJob(branchName).getLastBuild();
+                this.jenkins.assertBuildStatusSuccess(lastBuild);
+                this.jenkins.assertLogContains("Obtained " + this.jenkinsFile + " from " + url.replace("${branch}/${path}", "master/" + this.jenkinsFile), lastBuild);
+                this.jenkins.assertLogContains(this.testFileInitalContent + branchName, lastBuild);
+            }
+            // SCM is not kept with the branch job, it is resolved from the project factory after the job is loaded again
+            this.jenkins.jenkins.reload();
+            workflowMultiBranchProject = this.jenkins.jenkins.getItemByFullName(this.projectName, WorkflowMultiBranchProject.class);
+            this.jenkins.buildAndAssertSuccess(workflowMultiBranchProject.getJob("feature"));
+            assertEquals(Collections.singleton("/raw/master/" + this.jenkinsFile), new HashSet<>(paths));
+        } finally {
+            server.stop(0);
+        }
+    }
+
     private void createProjectAndTest(boolean matchBranches, String localFileMarker, String fallbackBranch) throws Exception {
         int expectedBranches;
         if( StringUtils.isEmpty(localFileMarker) == false ) {
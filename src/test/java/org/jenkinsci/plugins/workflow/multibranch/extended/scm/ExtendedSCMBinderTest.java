@@ -0,0 +1,91 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
+
+import hudson.plugins.git.BranchSpec;
+import hudson.plugins.git.GitSCM;
+import hudson.plugins.git.extensions.GitSCMExtension;
+import hudson.plugins.git.extensions.impl.CloneOption;
+import hudson.plugins.git.extensions.impl.SparseCheckoutPath;
+import hudson.plugins.git.extensions.impl.SparseCheckoutPaths;
+import hudson.scm.SCM;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ExtendedSCMBinderTest {
+
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    @Test
+    public void testMinimalFetchProfile() {
+        GitSCM gitSCM = ExtendedSCMBinder.withMinimalFetch(this.gitSCM(), "ci/Jenkinsfile");
+        CloneOption cloneOption = gitSCM.getExtensions().get(CloneOption.class);
+        assertTrue(cloneOption.isShallow());
+        assertTrue(cloneOption.isNoTags());
+        assertEquals(Integer.valueOf(1), cloneOption.getDepth());
+        assertEquals(Collections.singletonList("/ci/"), this.sparsePaths(gitSCM));
+        assertEquals(Collections.singletonList("/Jenkinsfile"), this.sparsePaths(ExtendedSCMBinder.withMinimalFetch(this.gitSCM(), "Jenkinsfile")));
+    }
+
+    @Test
+    public void testSparsePathOfScriptPathIsNormalized() {
+        assertEquals("/ci/", ExtendedSCMBinder.getSparsePath("./ci/Jenkinsfile"));
+        assertEquals("/ci/", ExtendedSCMBinder.getSparsePath("/ci//Jenkinsfile"));
+        assertEquals("/ci/", ExtendedSCMBinder.getSparsePath("ci/./pipelines/../Jenkinsfile"));
+        assertEquals("/Jenkinsfile", ExtendedSCMBinder.getSparsePath("./Jenkinsfile"));
+        assertEquals(Collections.singletonList("/ci/"), this.sparsePaths(ExtendedSCMBinder.withMinimalFetch(this.gitSCM(), "./ci/Jenkinsfile")));
+    }
+
+    @Test
+    public void testConfiguredCloneOptionIsKept() {
+        CloneOption configured = new CloneOption(true, false, null, 10);
+        configured.setDepth(5);
+        GitSCM gitSCM = ExtendedSCMBinder.withMinimalFetch(this.gitSCM(configured), "Jenkinsfile");
+        CloneOption cloneOption = gitSCM.getExtensions().get(CloneOption.class);
+        assertSame(configured, cloneOption);
+        assertEquals(Integer.valueOf(5), cloneOption.getDepth());
+        assertFalse(cloneOption.isNoTags());
+        assertEquals(1, gitSCM.getExtensions().getAll(CloneOption.class).size());
+    }
+
+    @Test
+    public void testConfiguredSparseCheckoutPathsAreMerged() {
+        SparseCheckoutPaths configured = new SparseCheckoutPaths(Arrays.asList(new SparseCheckoutPath("/shared/"), new SparseCheckoutPath("/ci/")));
+        assertEquals(Arrays.asList("/shared/", "/ci/"), this.sparsePaths(ExtendedSCMBinder.withMinimalFetch(this.gitSCM(configured), "ci/Jenkinsfile")));
+        // Jenkins file would not be checked out with the configured paths only
+        GitSCM gitSCM = ExtendedSCMBinder.withMinimalFetch(this.gitSCM(configured), "pipelines/Jenkinsfile");
+        assertEquals(Arrays.asList("/shared/", "/ci/", "/pipelines/"), this.sparsePaths(gitSCM));
+        assertEquals(1, gitSCM.getExtensions().getAll(SparseCheckoutPaths.class).size());
+    }
+
+    @Test
+    public void testSCMIsUntouchedWithoutMinimalFetch() {
+        GitSCM gitSCM = this.gitSCM();
+        SCM checkoutSCM = ExtendedSCMBinder.getCheckoutSCM(gitSCM, "Jenkinsfile", false);
+        assertSame(gitSCM, checkoutSCM);
+        assertNull(((GitSCM) checkoutSCM).getExtensions().get(CloneOption.class));
+        assertNull(((GitSCM) checkoutSCM).getExtensions().get(SparseCheckoutPaths.class));
+    }
+
+    private GitSCM gitSCM(GitSCMExtension... extensions) {
+        return new GitSCM(GitSCM.createRepoList("https://git.example.com/acme/pipelines.git", null),
+                Collections.singletonList(new BranchSpec("master")), null, null, Arrays.asList(extensions));
+    }
+
+    private List<String> sparsePaths(GitSCM gitSCM) {
+        return gitSCM.getExtensions().get(SparseCheckoutPaths.class).getSparseCheckoutPaths().stream()
+                .map(SparseCheckoutPath::getPath)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,54 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class JenkinsfileCacheTest {
+
+    private final String remoteUrl = "file:///tmp/remote-jenkins-file";
+    private final String jenkinsFile = "Jenkinsfile";
+
+    @Test
+    public void testHitAndMissCounters() {
+        JenkinsfileCache cache = new JenkinsfileCache(10, 1024);
+        JenkinsfileCache.Key key = new JenkinsfileCache.Key(this.remoteUrl, "", "a1", this.jenkinsFile);
+        assertNull(cache.get(key));
+        cache.put(key, "pipeline {}");
+        assertEquals("pipeline {}", cache.get(new JenkinsfileCache.Key(this.remoteUrl, "", "a1", this.jenkinsFile)));
+        assertNull(cache.get(new JenkinsfileCache.Key(this.remoteUrl, "", "b2", this.jenkinsFile)));
+        // Jenkins files read with other credentials are cached apart
+        assertNull(cache.get(new JenkinsfileCache.Key(this.remoteUrl, "private@folder", "a1", this.jenkinsFile)));
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() {
+        JenkinsfileCache cache = new JenkinsfileCache(2, 1024);
+        JenkinsfileCache.Key first = new JenkinsfileCache.Key(this.remoteUrl, "", "a1", this.jenkinsFile);
+        JenkinsfileCache.Key second = new JenkinsfileCache.Key(this.remoteUrl, "", "b2", this.jenkinsFile);
+        JenkinsfileCache.Key third = new JenkinsfileCache.Key(this.remoteUrl, "", "c3", this.jenkinsFile);
+        cache.put(first, "first");
+        cache.put(second, "second");
+        // Touch first entry, so second one becomes the eldest
+        cache.get(first);
+        cache.put(third, "third");
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get(second));
+        assertEquals("first", cache.get(first));
+    }
+
+    @Test
+    public void testSizeLimit() {
+        JenkinsfileCache cache = new JenkinsfileCache(10, 15);
+        cache.put(new JenkinsfileCache.Key(this.remoteUrl, "", "a1", this.jenkinsFile), "0123456789");
+        assertEquals(0, cache.size());
+        cache.put(new JenkinsfileCache.Key(this.remoteUrl, "", "a1", this.jenkinsFile), "01234");
+        cache.put(new JenkinsfileCache.Key(this.remoteUrl, "", "b2", this.jenkinsFile), "56789");
+        assertEquals(1, cache.size());
+        assertEquals(10, cache.getBytes());
+    }
+}
@@ -0,0 +1,59 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LocalMarkerProbeCacheTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testResultsSurviveRestart() throws Exception {
+        File file = new File(tmp.getRoot(), "probes.xml");
+        LocalMarkerProbeCache cache = new LocalMarkerProbeCache(file, 10);
+        String found = LocalMarkerProbeCache.keyOf("source", "master", "1000", "pom.xml");
+        String missing = LocalMarkerProbeCache.keyOf("source", "feature", "1000", "pom.xml");
+        cache.put(found, true);
+        cache.put(missing, false);
+        cache.save();
+
+        LocalMarkerProbeCache restarted = new LocalMarkerProbeCache(file, 10);
+        restarted.load();
+        assertEquals(Boolean.TRUE, restarted.get(found));
+        assertEquals(Boolean.FALSE, restarted.get(missing));
+    }
+
+    @Test
+    public void testMovedHeadIsProbedAgain() {
+        LocalMarkerProbeCache cache = new LocalMarkerProbeCache(new File(tmp.getRoot(), "probes.xml"), 10);
+        cache.put(LocalMarkerProbeCache.keyOf("source", "master", "1000", "pom.xml"), true);
+        assertNull(cache.get(LocalMarkerProbeCache.keyOf("source", "master", "2000", "pom.xml")));
+        assertNotEquals(LocalMarkerProbeCache.keyOf("source", "master", "1000", "pom.xml"), LocalMarkerProbeCache.keyOf("source", "master", "1000", "build.gradle"));
+        // Heads which can not be identified are not cached
+        assertNull(LocalMarkerProbeCache.keyOf("source", "master", null, "pom.xml"));
+        assertNull(LocalMarkerProbeCache.keyOf(null, "master", "1000", "pom.xml"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() {
+        LocalMarkerProbeCache cache = new LocalMarkerProbeCache(new File(tmp.getRoot(), "probes.xml"), 2);
+        cache.put("first", true);
+        cache.put("second", true);
+        cache.get("first");
+        cache.put("third", false);
+        assertEquals(2, cache.size());
+        assertTrue(cache.get("first"));
+        assertNull(cache.get("second"));
+        assertFalse(cache.get("third"));
+    }
+}
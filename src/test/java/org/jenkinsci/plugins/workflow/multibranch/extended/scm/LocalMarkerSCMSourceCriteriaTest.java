@@ -0,0 +1,132 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.TaskListener;
+import jenkins.scm.api.SCMFile;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LocalMarkerSCMSourceCriteriaTest {
+
+    @Test
+    public void testParseMarkers() {
+        assertEquals(Arrays.asList("pom.xml", "ci/*.yaml", "**/build.gradle"),
+                LocalMarkerSCMSourceCriteria.parseMarkers(" pom.xml, /ci/*.yaml\n\n**/build.gradle,"));
+        assertTrue(LocalMarkerSCMSourceCriteria.isPattern("ci/*.yaml"));
+        assertFalse(LocalMarkerSCMSourceCriteria.isPattern("pom.xml"));
+    }
+
+    @Test
+    public void testFindFirstMatchesPatternsAndLiterals() throws Exception {
+        FakeFile root = FakeFile.tree("README.md", "ci/build.yaml", "modules/core/pom.xml");
+        assertEquals("ci/build.yaml", findFirst(root, Arrays.asList("Dockerfile", "ci/*.yaml")));
+        assertEquals("modules/core/pom.xml", findFirst(root, Arrays.asList("**/pom.xml")));
+        assertEquals("README.md", findFirst(root, Arrays.asList("Dockerfile", "README.md")));
+        assertNull(findFirst(root, Arrays.asList("Dockerfile", "ci/*.yml")));
+    }
+
+    @Test
+    public void testFindFirstOnlyListsDirectoriesWhichCanMatch() throws Exception {
+        FakeFile root = FakeFile.tree("ci/build.yaml", "docs/a/b/c.txt", "src/main/Main.java");
+        assertNull(findFirst(root, Arrays.asList("Dockerfile", "ci/*.yml")));
+        assertEquals(Arrays.asList("", "ci"), FakeFile.listed);
+    }
+
+    @Test
+    public void testFindFirstStopsAtMaximumDepth() throws Exception {
+        FakeFile root = FakeFile.tree("a/b/c/d/pom.xml");
+        assertNull(LocalMarkerSCMSourceCriteria.findFirst(root, Arrays.asList("**/pom.xml"), 2, 1000, TaskListener.NULL));
+        assertEquals(Arrays.asList("", "a", "a/b"), FakeFile.listed);
+    }
+
+    @Test
+    public void testFindFirstStopsAtMaximumDirectories() throws Exception {
+        FakeFile root = FakeFile.tree("x/1.txt", "y/2.txt", "z/pom.xml");
+        assertNull(LocalMarkerSCMSourceCriteria.findFirst(root, Arrays.asList("**/pom.xml"), 10, 2, TaskListener.NULL));
+        assertEquals(Arrays.asList("", "x"), FakeFile.listed);
+    }
+
+    private static String findFirst(SCMFile root, List<String> markers) throws Exception {
+        return LocalMarkerSCMSourceCriteria.findFirst(root, markers, 10, 1000, TaskListener.NULL);
+    }
+
+    private static final class FakeFile extends SCMFile {
+
+        static final List<String> listed = new ArrayList<>();
+
+        private final List<FakeFile> children = new ArrayList<>();
+        private final boolean directory;
+
+        private FakeFile() {
+            this.directory = true;
+        }
+
+        private FakeFile(FakeFile parent, String name, boolean directory) {
+            super(parent, name);
+            this.directory = directory;
+        }
+
+        static FakeFile tree(String... paths) {
+            listed.clear();
+            FakeFile root = new FakeFile();
+            for (String path : paths) {
+                FakeFile directory = root;
+                String[] names = path.split("/");
+                for (int i = 0; i < names.length; i++) {
+                    directory = directory.child(names[i], i < names.length - 1);
+                }
+            }
+            return root;
+        }
+
+        private FakeFile child(String name, boolean directory) {
+            for (FakeFile child : this.children) {
+                if (child.getName().equals(name)) {
+                    return child;
+                }
+            }
+            FakeFile child = new FakeFile(this, name, directory);
+            this.children.add(child);
+            return child;
+        }
+
+        @NonNull
+        @Override
+        protected SCMFile newChild(@NonNull String name, boolean assumeIsDirectory) {
+            return new FakeFile(this, name, assumeIsDirectory);
+        }
+
+        @NonNull
+        @Override
+        public Iterable<SCMFile> children() {
+            listed.add(getPath());
+            return new ArrayList<>(this.children);
+        }
+
+        @Override
+        public long lastModified() {
+            return 0;
+        }
+
+        @NonNull
+        @Override
+        protected Type type() {
+            return this.directory ? Type.DIRECTORY : Type.REGULAR_FILE;
+        }
+
+        @NonNull
+        @Override
+        public InputStream content() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MissingBranchCacheTest {
+
+    private final String remoteUrl = "file:///tmp/remote-jenkins-file";
+
+    @Test
+    public void testMissingBranchIsRemembered() {
+        MissingBranchCache cache = new MissingBranchCache(TimeUnit.MINUTES.toMillis(10));
+        assertFalse(cache.isMissing(this.remoteUrl, "feature"));
+        cache.markMissing(this.remoteUrl, "feature");
+        assertTrue(cache.isMissing(this.remoteUrl, "feature"));
+        assertFalse(cache.isMissing(this.remoteUrl, "hotfix"));
+        cache.invalidate(this.remoteUrl, "feature");
+        assertFalse(cache.isMissing(this.remoteUrl, "feature"));
+    }
+
+    @Test
+    public void testRepositoryInvalidation() {
+        MissingBranchCache cache = new MissingBranchCache(TimeUnit.MINUTES.toMillis(10));
+        cache.markMissing(this.remoteUrl, "feature");
+        cache.markMissing(this.remoteUrl, "hotfix");
+        cache.invalidate(this.remoteUrl);
+        assertFalse(cache.isMissing(this.remoteUrl, "feature"));
+        assertFalse(cache.isMissing(this.remoteUrl, "hotfix"));
+        assertTrue(cache.getRemoteUrls().isEmpty());
+    }
+
+    @Test
+    public void testEntriesExpire() throws Exception {
+        MissingBranchCache cache = new MissingBranchCache(1);
+        cache.markMissing(this.remoteUrl, "feature");
+        TimeUnit.MILLISECONDS.sleep(10);
+        assertFalse(cache.isMissing(this.remoteUrl, "feature"));
+    }
+
+    @Test
+    public void testEventDrivenRepositoryUsesEventTtl() throws Exception {
+        MissingBranchCache cache = new MissingBranchCache(1, TimeUnit.MINUTES.toMillis(10));
+        cache.onEvent(this.remoteUrl);
+        cache.markMissing(this.remoteUrl, "feature");
+        TimeUnit.MILLISECONDS.sleep(10);
+        assertTrue(cache.isMissing(this.remoteUrl, "feature"));
+    }
+}
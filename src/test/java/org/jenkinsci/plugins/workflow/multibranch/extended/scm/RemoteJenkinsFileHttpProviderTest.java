@@ -0,0 +1,136 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
+
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class RemoteJenkinsFileHttpProviderTest {
+
+    private static final String SCRIPT = "pipeline { agent any }";
+    private static final String ETAG = "\"a1\"";
+
+    private HttpServer server;
+    private String baseUrl;
+    // Same handler on another port, which is another origin for the credentials
+    private HttpServer otherServer;
+    private String otherUrl;
+    // If-None-Match and Authorization headers of every request, in order
+    private final List<String> conditions = new CopyOnWriteArrayList<>();
+    private final List<String> authorizations = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void startServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.otherServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.otherUrl = "http://" + this.otherServer.getAddress().getHostString() + ":" + this.otherServer.getAddress().getPort() + "/raw/";
+        HttpHandler handler = exchange -> {
+            this.conditions.add(String.valueOf(exchange.getRequestHeaders().getFirst("If-None-Match")));
+            this.authorizations.add(String.valueOf(exchange.getRequestHeaders().getFirst("Authorization")));
+            String path = exchange.getRequestURI().getRawPath();
+            if (path.equals("/raw/feature/a%20b/ci/Jenkinsfile")) {
+                exchange.getResponseHeaders().add("ETag", ETAG);
+                if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                } else {
+                    byte[] body = SCRIPT.getBytes(StandardCharsets.UTF_8);
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                }
+            } else if (path.startsWith("/raw/moved/")) {
+                exchange.getResponseHeaders().add("Location", "/raw/feature/a%20b/ci/Jenkinsfile");
+                exchange.sendResponseHeaders(302, -1);
+            } else if (path.startsWith("/raw/elsewhere/")) {
+                exchange.getResponseHeaders().add("Location", this.otherUrl + "feature/a%20b/ci/Jenkinsfile");
+                exchange.sendResponseHeaders(302, -1);
+            } else if (path.startsWith("/raw/broken/")) {
+                exchange.sendResponseHeaders(500, -1);
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+            }
+            exchange.close();
+        };
+        this.server.createContext("/raw/", handler);
+        this.otherServer.createContext("/raw/", handler);
+        this.server.start();
+        this.otherServer.start();
+        this.baseUrl = "http://" + this.server.getAddress().getHostString() + ":" + this.server.getAddress().getPort() + "/raw/";
+    }
+
+    @After
+    public void stopServer() {
+        this.server.stop(0);
+        this.otherServer.stop(0);
+    }
+
+    @Test
+    public void testExpandEncodesSegments() {
+        assertEquals("https://git.example.com/raw/feature/a%20b/ci/Jenkinsfile",
+                RemoteJenkinsFileHttpProvider.expand("https://git.example.com/raw/${branch}/${path}", "feature/a b", "/ci/Jenkinsfile"));
+    }
+
+    @Test
+    public void testUnchangedFileIsReadConditionally() throws Exception {
+        RemoteJenkinsFileHttpProvider provider = new RemoteJenkinsFileHttpProvider(HttpClient.newHttpClient(), 10);
+        String url = RemoteJenkinsFileHttpProvider.expand(this.baseUrl + "${branch}/${path}", "feature/a b", "ci/Jenkinsfile");
+        assertEquals(SCRIPT, provider.fetch(url, null));
+        assertEquals(SCRIPT, provider.fetch(url, null));
+        assertEquals(List.of("null", ETAG), this.conditions);
+        assertEquals(1, provider.getNotModified());
+        assertEquals(1, provider.size());
+    }
+
+    @Test
+    public void testResponsesAreKeptPerAuthorization() throws Exception {
+        RemoteJenkinsFileHttpProvider provider = new RemoteJenkinsFileHttpProvider(HttpClient.newHttpClient(), 10);
+        String url = RemoteJenkinsFileHttpProvider.expand(this.baseUrl + "${branch}/${path}", "feature/a b", "ci/Jenkinsfile");
+        assertEquals(SCRIPT, provider.fetch(url, "Basic dXNlcjpwYXNz"));
+        assertEquals(SCRIPT, provider.fetch(url, null));
+        assertEquals(List.of("Basic dXNlcjpwYXNz", "null"), this.authorizations);
+        assertEquals(List.of("null", "null"), this.conditions);
+        assertEquals(0, provider.getNotModified());
+    }
+
+    @Test
+    public void testAuthorizationIsOnlySentToSameOrigin() throws Exception {
+        RemoteJenkinsFileHttpProvider provider = new RemoteJenkinsFileHttpProvider(HttpClient.newHttpClient(), 10);
+        assertEquals(SCRIPT, provider.fetch(this.baseUrl + "moved/Jenkinsfile", "Basic dXNlcjpwYXNz"));
+        assertEquals(List.of("Basic dXNlcjpwYXNz", "Basic dXNlcjpwYXNz"), this.authorizations);
+        this.authorizations.clear();
+        assertEquals(SCRIPT, provider.fetch(this.baseUrl + "elsewhere/Jenkinsfile", "Basic dXNlcjpwYXNz"));
+        assertEquals(List.of("Basic dXNlcjpwYXNz", "null"), this.authorizations);
+    }
+
+    @Test
+    public void testMissingFile() throws Exception {
+        RemoteJenkinsFileHttpProvider provider = new RemoteJenkinsFileHttpProvider(HttpClient.newHttpClient(), 10);
+        assertNull(provider.fetch(this.baseUrl + "missing/Jenkinsfile", null));
+    }
+
+    @Test
+    public void testServerError() throws Exception {
+        RemoteJenkinsFileHttpProvider provider = new RemoteJenkinsFileHttpProvider(HttpClient.newHttpClient(), 10);
+        try {
+            provider.fetch(this.baseUrl + "broken/Jenkinsfile", null);
+            fail("Server errors must not be taken as a missing file");
+        } catch (IOException ex) {
+            assertEquals("Unable to read " + this.baseUrl + "broken/Jenkinsfile, server answered HTTP 500", ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
+
+import hudson.model.Queue;
+import hudson.plugins.git.BranchSpec;
+import hudson.plugins.git.GitSCM;
+import jenkins.branch.BranchSource;
+import jenkins.plugins.git.GitSCMSource;
+import jenkins.plugins.git.GitSampleRepoRule;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.jenkinsci.plugins.workflow.multibranch.WorkflowMultiBranchProject;
+import org.jenkinsci.plugins.workflow.multibranch.extended.RemoteJenkinsFileWorkflowBranchProjectFactory;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class RemoteJenkinsFileQueueListenerTest {
+
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+    @Rule
+    public GitSampleRepoRule sourceCodeRepo = new GitSampleRepoRule();
+    @Rule
+    public GitSampleRepoRule remoteJenkinsFileRepo = new GitSampleRepoRule();
+
+    private WorkflowJob branchJob;
+
+    @Before
+    public void setup() throws Exception {
+        this.sourceCodeRepo.init();
+        this.remoteJenkinsFileRepo.init();
+        this.remoteJenkinsFileRepo.write("Jenkinsfile", "echo 'remote Jenkins file'");
+        this.remoteJenkinsFileRepo.git("add", "Jenkinsfile");
+        this.remoteJenkinsFileRepo.git("commit", "--all", "--message=Jenkinsfile");
+        GitSCM remoteJenkinsFileSCM = new GitSCM(GitSCM.createRepoList(this.remoteJenkinsFileRepo.toString(), null),
+                Collections.singletonList(new BranchSpec("master")), null, null, Collections.emptyList());
+        WorkflowMultiBranchProject project = this.jenkins.createProject(WorkflowMultiBranchProject.class, "project");
+        project.getSourcesList().add(new BranchSource(new GitSCMSource(null, this.sourceCodeRepo.toString(), "", "*", "", false)));
+        RemoteJenkinsFileWorkflowBranchProjectFactory factory = new RemoteJenkinsFileWorkflowBranchProjectFactory("Jenkinsfile", "", remoteJenkinsFileSCM, false, "master", false);
+        factory.setLightweight(true);
+        project.setProjectFactory(factory);
+        project.scheduleBuild2(0);
+        this.jenkins.waitUntilNoActivity();
+        this.branchJob = project.getJob("master");
+        assertNotNull(this.branchJob);
+        // Keep runs in the queue until the test lets them start
+        this.jenkins.jenkins.setNumExecutors(0);
+    }
+
+    @Test
+    public void testResolutionIsHandedToTheRun() throws Exception {
+        int nextBuildNumber = this.branchJob.getNextBuildNumber();
+        this.branchJob.scheduleBuild2(0);
+        CompletableFuture<?> resolution = this.awaitResolution();
+        resolution.get(60, TimeUnit.SECONDS);
+        this.jenkins.jenkins.setNumExecutors(1);
+        this.jenkins.waitUntilNoActivity();
+        WorkflowRun run = this.branchJob.getBuildByNumber(nextBuildNumber);
+        this.jenkins.assertBuildStatusSuccess(run);
+        this.jenkins.assertLogContains("resolved while the build was waiting in the queue", run);
+        assertNull(RemoteJenkinsFilePrefetcher.get().getResolution(this.branchJob.getFullName()));
+    }
+
+    @Test
+    public void testResolutionIsDiscardedWithCancelledRun() throws Exception {
+        this.branchJob.scheduleBuild2(0);
+        this.awaitResolution();
+        Queue.Item item = this.jenkins.jenkins.getQueue().getItem(this.branchJob);
+        assertNotNull(item);
+        this.jenkins.jenkins.getQueue().cancel(item);
+        assertNull(RemoteJenkinsFilePrefetcher.get().getResolution(this.branchJob.getFullName()));
+    }
+
+    @Test
+    public void testResolutionWhichIsNotTakenExpires() throws Exception {
+        this.branchJob.scheduleBuild2(0);
+        this.awaitResolution().get(60, TimeUnit.SECONDS);
+        // Run left the queue but never took the resolution
+        RemoteJenkinsFilePrefetcher.get().expire(this.branchJob.getFullName(), 0);
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(60);
+        while (RemoteJenkinsFilePrefetcher.get().getResolution(this.branchJob.getFullName()) != null) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Resolution was kept after the hand-off timeout");
+            }
+            Thread.sleep(100);
+        }
+    }
+
+    private CompletableFuture<?> awaitResolution() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(60);
+        CompletableFuture<?> resolution;
+        while ((resolution = RemoteJenkinsFilePrefetcher.get().getResolution(this.branchJob.getFullName())) == null) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Resolution was not started when the run entered the queue");
+            }
+            Thread.sleep(100);
+        }
+        return resolution;
+    }
+}
@@ -0,0 +1,120 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
+
+import hudson.scm.SCM;
+import jenkins.plugins.git.GitSCMSource;
+import jenkins.scm.api.SCMEvent;
+import jenkins.scm.api.SCMHead;
+import jenkins.scm.api.SCMHeadEvent;
+import jenkins.scm.api.SCMNavigator;
+import jenkins.scm.api.SCMRevision;
+import jenkins.scm.api.SCMSource;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RemoteJenkinsFileSCMEventListenerTest {
+
+    private static final long TTL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long EVENT_TTL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    private final String remoteUrl = "https://git.example.com/acme/pipelines.git";
+    private final Set<String> remoteUrls = Collections.singleton(this.remoteUrl);
+    private final RemoteRefTable refTable = new RemoteRefTable(TTL_MILLIS, EVENT_TTL_MILLIS);
+    private final MissingBranchCache missingBranches = new MissingBranchCache(TimeUnit.MINUTES.toMillis(10));
+
+    @Test
+    public void testRepositoryPath() {
+        assertEquals("acme/pipelines", RemoteJenkinsFileSCMEventListener.getRepositoryPath("https://user@git.example.com/acme/pipelines.git"));
+        assertEquals("acme/pipelines", RemoteJenkinsFileSCMEventListener.getRepositoryPath("git@git.example.com:acme/pipelines.git"));
+        assertEquals("scm/acme/pipelines", RemoteJenkinsFileSCMEventListener.getRepositoryPath("ssh://git@git.example.com:7999/scm/acme/pipelines/"));
+        assertNull(RemoteJenkinsFileSCMEventListener.getRepositoryPath("https://git.example.com"));
+    }
+
+    @Test
+    public void testNotifyCommitEventMatchesExactly() {
+        this.missingBranches.markMissing(this.remoteUrl, "feature");
+        this.missingBranches.markMissing(this.remoteUrl, "hotfix");
+        RemoteJenkinsFileSCMEventListener.handle(new PushEvent(null, this.remoteUrl, "feature"), this.remoteUrls, this.refTable, this.missingBranches);
+        assertEquals(EVENT_TTL_MILLIS, this.refTable.getTtlMillis(this.remoteUrl));
+        assertFalse(this.missingBranches.isMissing(this.remoteUrl, "feature"));
+        assertTrue(this.missingBranches.isMissing(this.remoteUrl, "hotfix"));
+    }
+
+    @Test
+    public void testWebhookEventWithRepositoryPathMatchesExactly() {
+        this.missingBranches.markMissing(this.remoteUrl, "feature");
+        RemoteJenkinsFileSCMEventListener.handle(new PushEvent("acme/pipelines", null, "feature"), this.remoteUrls, this.refTable, this.missingBranches);
+        assertEquals(EVENT_TTL_MILLIS, this.refTable.getTtlMillis(this.remoteUrl));
+        assertFalse(this.missingBranches.isMissing(this.remoteUrl, "feature"));
+    }
+
+    @Test
+    public void testWebhookEventWithRepositoryNameDoesNotExtendTtl() {
+        this.missingBranches.markMissing(this.remoteUrl, "feature");
+        RemoteJenkinsFileSCMEventListener.handle(new PushEvent("pipelines", null, "feature"), this.remoteUrls, this.refTable, this.missingBranches);
+        assertEquals(TTL_MILLIS, this.refTable.getTtlMillis(this.remoteUrl));
+        assertFalse(this.missingBranches.isMissing(this.remoteUrl, "feature"));
+    }
+
+    @Test
+    public void testUnrelatedEventIsIgnored() {
+        this.missingBranches.markMissing(this.remoteUrl, "feature");
+        RemoteJenkinsFileSCMEventListener.handle(new PushEvent("acme/application", "https://git.example.com/acme/application.git", "feature"), this.remoteUrls, this.refTable, this.missingBranches);
+        RemoteJenkinsFileSCMEventListener.handle(new PushEvent("other/pipelines-tools", null, "feature"), this.remoteUrls, this.refTable, this.missingBranches);
+        assertEquals(TTL_MILLIS, this.refTable.getTtlMillis(this.remoteUrl));
+        assertTrue(this.missingBranches.isMissing(this.remoteUrl, "feature"));
+    }
+
+    /**
+     * Push of a branch. With a remote URL it behaves like the {@code notifyCommit} event of the Git plugin, which only
+     * has heads for sources of that URL; without it like a webhook event of a hosting service, which only has heads
+     * for its own source type.
+     */
+    private static final class PushEvent extends SCMHeadEvent<String> {
+
+        private final String sourceName;
+        private final String remoteUrl;
+
+        private PushEvent(String sourceName, String remoteUrl, String branch) {
+            super(SCMEvent.Type.UPDATED, System.currentTimeMillis(), branch, "test");
+            this.sourceName = sourceName;
+            this.remoteUrl = remoteUrl;
+        }
+
+        @Override
+        public boolean isMatch(SCMNavigator navigator) {
+            return false;
+        }
+
+        @Override
+        public String getSourceName() {
+            return this.sourceName;
+        }
+
+        @Override
+        public Map<SCMHead, SCMRevision> heads(SCMSource source) {
+            if (this.remoteUrl != null && source instanceof GitSCMSource && this.remoteUrl.equals(((GitSCMSource) source).getRemote())) {
+                return Collections.singletonMap(new SCMHead(this.getPayload()), null);
+            }
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public boolean isMatch(SCM scm) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RemoteJenkinsFileScriptStoreTest {
+
+    private static final String URL = "https://example.com/jenkinsfiles.git";
+    private static final String FIRST = "0123456789abcdef0123456789abcdef01234567";
+    private static final String SECOND = "89abcdef0123456789abcdef0123456789abcdef";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testCheckoutIsSharedByJobsOfSameCommit() throws Exception {
+        RemoteJenkinsFileScriptStore store = new RemoteJenkinsFileScriptStore(tmp.getRoot());
+        assertNull(store.read(URL, "", FIRST, "Jenkinsfile", "project/master"));
+
+        store.add(URL, "", FIRST, this.checkout(store, "first"), "project/master");
+        store.add(URL, "", FIRST, this.checkout(store, "duplicate"), "project/feature");
+
+        assertEquals("first", store.read(URL, "", FIRST, "Jenkinsfile", "project/develop"));
+        assertEquals(3, store.getReferenceCount(URL, "", FIRST));
+    }
+
+    @Test
+    public void testCheckoutIsNotSharedAcrossCredentials() throws Exception {
+        RemoteJenkinsFileScriptStore store = new RemoteJenkinsFileScriptStore(tmp.getRoot());
+        store.add(URL, "private@folder", FIRST, this.checkout(store, "first"), "folder/project/master");
+
+        assertNull(store.read(URL, "", FIRST, "Jenkinsfile", "project/master"));
+        assertEquals(1, store.getReferenceCount(URL, "private@folder", FIRST));
+        assertEquals(0, store.getReferenceCount(URL, "", FIRST));
+    }
+
+    @Test
+    public void testUnreferencedCheckoutIsDeleted() throws Exception {
+        RemoteJenkinsFileScriptStore store = new RemoteJenkinsFileScriptStore(tmp.getRoot());
+        store.add(URL, "", FIRST, this.checkout(store, "first"), "project/master");
+        store.add(URL, "", FIRST, this.checkout(store, "first"), "project/feature");
+
+        store.add(URL, "", SECOND, this.checkout(store, "second"), "project/master");
+        assertEquals("first", store.read(URL, "", FIRST, "Jenkinsfile", "project/feature"));
+
+        store.release("project");
+        assertEquals(0, store.getReferenceCount(URL, "", FIRST));
+        assertNull(store.read(URL, "", FIRST, "Jenkinsfile", "other/master"));
+        assertNull(store.read(URL, "", SECOND, "Jenkinsfile", "other/master"));
+        // Unreferenced checkouts are renamed out of the way before they are deleted
+        File[] left = tmp.getRoot().listFiles((dir, name) -> name.startsWith("."));
+        assertEquals(0, left.length);
+    }
+
+    @Test
+    public void testReferencesSurviveRestart() throws Exception {
+        RemoteJenkinsFileScriptStore store = new RemoteJenkinsFileScriptStore(tmp.getRoot());
+        store.add(URL, "", FIRST, this.checkout(store, "first"), "project/master");
+        store.rename("project/master", "renamed/master");
+        // References are saved shortly after they change
+        assertFalse(new File(tmp.getRoot(), "references.xml").exists());
+        store.save();
+
+        RemoteJenkinsFileScriptStore restarted = new RemoteJenkinsFileScriptStore(tmp.getRoot());
+        restarted.load();
+        assertEquals(1, restarted.getReferenceCount(URL, "", FIRST));
+        restarted.release("renamed/master");
+        assertEquals(0, restarted.getReferenceCount(URL, "", FIRST));
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void testMissingJenkinsFile() throws Exception {
+        RemoteJenkinsFileScriptStore store = new RemoteJenkinsFileScriptStore(tmp.getRoot());
+        store.add(URL, "", FIRST, this.checkout(store, "first"), "project/master");
+        store.read(URL, "", FIRST, "ci/Jenkinsfile", "project/master");
+    }
+
+    @Test
+    public void testCleanKeepsPendingCheckouts() throws Exception {
+        RemoteJenkinsFileScriptStore store = new RemoteJenkinsFileScriptStore(tmp.getRoot());
+        File pending = this.checkout(store, "pending");
+        store.clean();
+        assertTrue(pending.isDirectory());
+        assertTrue(pending.setLastModified(0));
+        store.clean();
+        assertFalse(pending.exists());
+    }
+
+    @Test
+    public void testWorkspaceIsCopiedWithoutGitDirectory() throws Exception {
+        RemoteJenkinsFileScriptStore store = new RemoteJenkinsFileScriptStore(tmp.getRoot());
+        File workspace = store.getWorkspace(URL, "");
+        Files.createDirectories(new File(workspace, ".git").toPath());
+        Files.write(new File(workspace, ".git/HEAD").toPath(), FIRST.getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(workspace, "Jenkinsfile").toPath(), "first".getBytes(StandardCharsets.UTF_8));
+
+        store.addCopy(URL, "", FIRST, workspace, "project/master");
+        store.addCopy(URL, "", FIRST, workspace, "project/feature");
+
+        assertEquals("first", store.read(URL, "", FIRST, "Jenkinsfile", "project/master"));
+        assertEquals(2, store.getReferenceCount(URL, "", FIRST));
+        File[] stored = workspace.getParentFile().listFiles((dir, name) -> name.equals(FIRST));
+        assertEquals(1, stored.length);
+        assertFalse(new File(stored[0], ".git").exists());
+        // Workspace is kept for the next fetch
+        assertTrue(new File(workspace, ".git/HEAD").isFile());
+    }
+
+    @Test
+    public void testCleanKeepsWorkspaceOfReferencedRepository() throws Exception {
+        RemoteJenkinsFileScriptStore store = new RemoteJenkinsFileScriptStore(tmp.getRoot());
+        File workspace = store.getWorkspace(URL, "");
+        store.add(URL, "", FIRST, this.checkout(store, "first"), "project/master");
+        assertTrue(workspace.setLastModified(0));
+        store.clean();
+        assertTrue(workspace.isDirectory());
+
+        store.release("project");
+        store.clean();
+        assertFalse(workspace.exists());
+    }
+
+    private File checkout(RemoteJenkinsFileScriptStore store, String content) throws Exception {
+        File checkout = store.newCheckoutDirectory(URL, "");
+        Files.write(new File(checkout, "Jenkinsfile").toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return checkout;
+    }
+}
@@ -0,0 +1,64 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class RemoteRefTableTest {
+
+    private final String remoteUrl = "file:///tmp/remote-jenkins-file";
+    private final Map<String, String> beforePush = Collections.singletonMap("master", "a1");
+    private final Map<String, String> afterPush = Collections.singletonMap("master", "b2");
+
+    @Test
+    public void testHeadsAreKept() throws Exception {
+        RemoteRefTable table = new RemoteRefTable(TimeUnit.MINUTES.toMillis(10), TimeUnit.HOURS.toMillis(1));
+        AtomicInteger listings = new AtomicInteger();
+        assertEquals(this.beforePush, table.getHeads(this.remoteUrl, "", () -> {
+            listings.incrementAndGet();
+            return this.beforePush;
+        }));
+        assertEquals(this.beforePush, table.getHeads(this.remoteUrl, "", () -> {
+            listings.incrementAndGet();
+            return this.afterPush;
+        }));
+        assertEquals(1, listings.get());
+    }
+
+    @Test
+    public void testListingStartedBeforeEventIsNotKept() throws Exception {
+        RemoteRefTable table = new RemoteRefTable(TimeUnit.MINUTES.toMillis(10), TimeUnit.HOURS.toMillis(1));
+        // Push event arrives while the repository is being listed
+        assertEquals(this.beforePush, table.getHeads(this.remoteUrl, "", () -> {
+            table.onEvent(this.remoteUrl);
+            return this.beforePush;
+        }));
+        assertEquals(this.afterPush, table.getHeads(this.remoteUrl, "", () -> this.afterPush));
+        assertEquals(this.afterPush, table.getHeads(this.remoteUrl, "", () -> this.beforePush));
+    }
+
+    @Test
+    public void testListingStartedBeforeClearIsNotKept() throws Exception {
+        RemoteRefTable table = new RemoteRefTable(TimeUnit.MINUTES.toMillis(10), TimeUnit.HOURS.toMillis(1));
+        table.getHeads(this.remoteUrl, "", () -> {
+            table.clear();
+            return this.beforePush;
+        });
+        assertEquals(this.afterPush, table.getHeads(this.remoteUrl, "", () -> this.afterPush));
+    }
+
+    @Test
+    public void testHeadsAreKeptApartPerCredentials() throws Exception {
+        RemoteRefTable table = new RemoteRefTable(TimeUnit.MINUTES.toMillis(10), TimeUnit.HOURS.toMillis(1));
+        assertEquals(this.beforePush, table.getHeads(this.remoteUrl, "", () -> this.beforePush));
+        assertEquals(this.afterPush, table.getHeads(this.remoteUrl, "private@folder", () -> this.afterPush));
+        assertEquals(this.beforePush, table.getHeads(this.remoteUrl, "", () -> this.afterPush));
+        table.invalidate(this.remoteUrl);
+        assertEquals(this.beforePush, table.getHeads(this.remoteUrl, "private@folder", () -> this.beforePush));
+    }
+}
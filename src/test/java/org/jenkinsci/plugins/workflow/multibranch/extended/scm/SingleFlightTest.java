@@ -0,0 +1,73 @@
+package org.jenkinsci.plugins.workflow.multibranch.extended.scm;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+
+    @Test
+    public void testConcurrentCallsAreCoalesced() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger fetches = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        int callers = 8;
+        ExecutorService executorService = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            results.add(executorService.submit(() -> singleFlight.execute("repo", () -> {
+                fetches.incrementAndGet();
+                started.countDown();
+                release.await();
+                return "Jenkinsfile";
+            })));
+            started.await();
+            for (int i = 1; i < callers; i++) {
+                results.add(executorService.submit(() -> singleFlight.execute("repo", () -> {
+                    fetches.incrementAndGet();
+                    return "Unexpected";
+                })));
+            }
+            // Wait until all other callers are waiting for the running fetch
+            while (singleFlight.getCoalesced() < callers - 1) {
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+            release.countDown();
+            for (Future<String> result : results) {
+                assertEquals("Jenkinsfile", result.get());
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertEquals(1, fetches.get());
+        assertEquals(1, singleFlight.getExecutions());
+        assertEquals(callers - 1, singleFlight.getCoalesced());
+    }
+
+    @Test
+    public void testFailureIsNotRemembered() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        try {
+            singleFlight.execute("repo", () -> {
+                throw new IOException("Unreachable");
+            });
+            fail("Exception expected");
+        } catch (IOException ex) {
+            assertEquals("Unreachable", ex.getMessage());
+        }
+        assertEquals("Jenkinsfile", singleFlight.execute("repo", () -> "Jenkinsfile"));
+        assertEquals(2, singleFlight.getExecutions());
+    }
+}